@@ -19,6 +19,7 @@ import java.io.PrintStream;
 import java.util.List;
 
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+import at.nonblocking.maven.nonsnapshot.model.ModuleRegistry;
 
 /**
  * Methods to process the Maven depedency tree found in the Workspace.
@@ -39,6 +40,13 @@ public interface DependencyTreeProcessor {
    */
   void buildDependencyTree(List<MavenModule> modules);
 
+  /**
+   * Build an dependency tree from the artifacts in given registry (see {@link #buildDependencyTree(List)}).
+   *
+   * @param moduleRegistry ModuleRegistry - Index of all workspace artifacts
+   */
+  void buildDependencyTree(ModuleRegistry moduleRegistry);
+
   /**
    * Mark all artifacts with dirty dependencies dirty.
    *
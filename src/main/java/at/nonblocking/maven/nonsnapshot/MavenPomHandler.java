@@ -27,6 +27,14 @@ import org.apache.maven.model.Model;
  */
 public interface MavenPomHandler {
 
+  /**
+   * Read the POM model from given file. Each POM is parsed only once as long as it doesn't change.
+   *
+   * @param pomFile File
+   * @return Model
+   */
+  Model readModel(File pomFile);
+
   /**
    * Convert given POM model to a WorkspaceArtifact object.
    *
@@ -37,6 +45,7 @@ public interface MavenPomHandler {
 
   /**
    * Read the POM model from given file and return a completely filled WorkspaceArtifact object.
+   * A new object is returned on each call, only the parsed POM model is cached as long as the POM doesn't change.
    *
    * @param pomFile File
    * @return WorkspaceArtifact
@@ -50,4 +59,20 @@ public interface MavenPomHandler {
    */
   void updateArtifact(MavenModule workspaceArtifact);
 
+  /**
+   * Compute the new content of the POM file with the updated versions, without writing it.
+   *
+   * @param workspaceArtifact WorkspaceArtifact
+   * @return the new file content or null if nothing changes
+   */
+  byte[] renderArtifact(MavenModule workspaceArtifact);
+
+  /**
+   * Atomically replace the content of given POM file.
+   *
+   * @param pomFile File
+   * @param content byte[]
+   */
+  void writePom(File pomFile, byte[] content);
+
 }
@@ -33,8 +33,9 @@ public interface ModuleTraverser {
    *
    * @param baseProject MavenProject
    * @param activeProfiles List<Profile>
+   * @param mavenPomHandler MavenPomHandler to read the POM files with
    * @return List<Model>
    */
-  List<Model> findAllModules(MavenProject baseProject, List<Profile> activeProfiles);
+  List<Model> findAllModules(MavenProject baseProject, List<Profile> activeProfiles, MavenPomHandler mavenPomHandler);
 
 }
@@ -15,8 +15,12 @@
  */
 package at.nonblocking.maven.nonsnapshot;
 
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import at.nonblocking.maven.nonsnapshot.impl.ScmHandlerFilesystemImpl;
+import at.nonblocking.maven.nonsnapshot.impl.ScmHandlerGitCliImpl;
 import at.nonblocking.maven.nonsnapshot.impl.ScmHandlerGitImpl;
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+import at.nonblocking.maven.nonsnapshot.model.ModuleRegistry;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -35,10 +39,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.impl.StaticLoggerBinder;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Properties;
+import java.util.Set;
 
 /**
  * Base class for NonSnapshot Plugin Mojos.
@@ -53,6 +65,9 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
   private static final String DEFAULT_TIMESTAMP_QUALIFIER_PATTERN = "yyyyMMddHHmm";
 
   protected static final String DIRTY_MODULES_REGISTRY_FILE = "nonSnapshotDirtyModules.txt";
+  protected static final String CHANGE_DETECTION_STATE_FILE = "nonSnapshotChangeState.properties";
+  protected static final String POM_WRITE_JOURNAL_FILE = "nonSnapshotPomJournal.txt";
+  protected static final String FILESYSTEM_SNAPSHOT_FILE = "filesystemSnapshot.idx";
 
   /**
    * SCM Username
@@ -66,9 +81,56 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
   @Parameter
   private String scmPassword;
 
+  /**
+   * The SCM handler:
+   * <ul>
+   *   <li>GIT: JGit based</li>
+   *   <li>GIT_CLI: Reads the history with the native git executable (must be on the PATH), which is faster on very large repositories</li>
+   *   <li>FILESYSTEM: No SCM, compares the module contents with a snapshot taken at the last version update</li>
+   * </ul>
+   */
+  @Parameter(defaultValue = "GIT", property = "nonsnapshot.scmType")
+  private String scmType = "GIT";
+
+  /**
+   * The file where the FILESYSTEM handler keeps the file hashes and module digests between builds.
+   * Default: ${user.home}/.m2/nonsnapshot/&lt;groupId&gt;/&lt;artifactId&gt;/filesystemSnapshot.idx,
+   * so it survives a fresh export of the sources.
+   */
+  @Parameter(property = "nonsnapshot.filesystemSnapshotFile")
+  private File filesystemSnapshotFile;
+
   @Parameter(defaultValue = "true")
   private boolean gitDoPush;
 
+  /**
+   * How often a rejected push of the version update commit is retried. Before each retry the commit is replayed
+   * onto the new upstream commit, POMs which were changed concurrently get their new versions computed again.
+   */
+  @Parameter(defaultValue = "3", property = "nonsnapshot.gitPushRetries")
+  private int gitPushRetries;
+
+  /**
+   * How the GIT handler detects changes since the last version update:
+   * <ul>
+   *   <li>LOG: Check if the last commit which touched a module is a version update of this plugin</li>
+   *   <li>TREE_ID: Compare the tree id of a module at the last version update commit with the one at HEAD</li>
+   * </ul>
+   */
+  @Parameter(defaultValue = "LOG", property = "nonsnapshot.gitChangeDetection")
+  private String gitChangeDetection = "LOG";
+
+  /**
+   * What the GIT handler assumes for modules without any commit after the boundary of a shallow clone:
+   * <ul>
+   *   <li>CHANGED: The modules are changed</li>
+   *   <li>TRUST_STATE: Take the last version update from the version ledger or the change detection state</li>
+   *   <li>TREE_ID: Compare the modules with the most recent version update commit within the shallow history</li>
+   * </ul>
+   */
+  @Parameter(defaultValue = "CHANGED", property = "nonsnapshot.gitShallowPolicy")
+  private String gitShallowPolicy = "CHANGED";
+
   /**
    * Defer the actual commit until nonsnapshot:commit is called.
    */
@@ -103,6 +165,61 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
   @Parameter(defaultValue = "false")
   private boolean generateChangedProjectsPropertyFile;
 
+  /**
+   * Don't look for changes since the last version update, but for changes since given revision (e.g. the merge base of a pull request).
+   * <br/>
+   * All modules are checked with a single tree diff between the given revision and HEAD.
+   */
+  @Parameter(property = "nonsnapshot.sinceRevision")
+  private String sinceRevision;
+
+  /**
+   * Don't look for changes since the last version update, but for changes since given date (e.g. for nightly builds).
+   * <br/>
+   * Format: yyyy-MM-dd or yyyy-MM-dd HH:mm
+   */
+  @Parameter(property = "nonsnapshot.sinceDate")
+  private String sinceDate;
+
+  /**
+   * Number of threads used for per-module SCM checks. Defaults to the number of available processors.
+   */
+  @Parameter(defaultValue = "0", property = "nonsnapshot.scmThreads")
+  private int scmThreads;
+
+  /**
+   * Number of threads used to rewrite the POM files of the dirty modules. Defaults to the number of available processors.
+   */
+  @Parameter(defaultValue = "0", property = "nonsnapshot.pomWriterThreads")
+  private int pomWriterThreads;
+
+  /**
+   * Keep the change detection state (last processed HEAD and the last change of each module) in the project base directory,
+   * so the next run only has to check the commits since then.
+   */
+  @Parameter(defaultValue = "false", property = "nonsnapshot.incrementalChangeDetection")
+  private boolean incrementalChangeDetection;
+
+  /**
+   * Only follow the first parent of merge commits during change detection (like git log --first-parent),
+   * so merges are compared with the mainline only and side branches are never walked.
+   */
+  @Parameter(defaultValue = "false", property = "nonsnapshot.gitFirstParent")
+  private boolean gitFirstParent;
+
+  /**
+   * Repository relative path globs (e.g. **&#47;README.md, **&#47;src/test/**) whose changes don't dirty a module.
+   */
+  @Parameter
+  private List<String> ignoredPaths;
+
+  /**
+   * Regular expressions matched against author and committer ("Name &lt;email&gt;") of commits which don't dirty a module,
+   * e.g. of a formatting bot.
+   */
+  @Parameter
+  private List<String> ignoredAuthors;
+
   /**
    * Disable this plugin
    */
@@ -142,6 +259,33 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
   @Parameter(property = "nonsnapshot.branchName")
   private String branchName;
 
+  /**
+   * Reserve the build numbers appended with appendBranchNameToVersion atomically in the SCM
+   * (for GIT a counter ref per module in the local repository), so concurrent runs never use the same build number.
+   */
+  @Parameter(defaultValue = "false", property = "nonsnapshot.allocateBuildNumbers")
+  private boolean allocateBuildNumbers;
+
+  /**
+   * Also consider uncommitted changes in the working tree (staged, modified and untracked files),
+   * e.g. to see with the pretend goal which modules a pending change would update.
+   */
+  @Parameter(defaultValue = "false", property = "nonsnapshot.includeUncommittedChanges")
+  private boolean includeUncommittedChanges;
+
+  /**
+   * Tag every updated module after the commit of the POM files with &lt;artifactId&gt;-&lt;new version&gt;.
+   */
+  @Parameter(defaultValue = "false", property = "nonsnapshot.tagVersions")
+  private boolean tagVersions;
+
+  /**
+   * Record each version update (module, new version and commit) in a version ledger and use it to find the last
+   * version update of a module without walking the history (for GIT the commit chain refs/nonsnapshot/ledger).
+   */
+  @Parameter(defaultValue = "false", property = "nonsnapshot.versionLedger")
+  private boolean versionLedger;
+
   /**
    * Replace special symbols (like "/", etc) in new <version> by this string.
    */
@@ -166,18 +310,48 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
 
     postProcessParameters();
 
-    internalExecute();
+    try {
+      internalExecute();
+    } finally {
+      this.scmHandler.close();
+    }
   }
 
   protected abstract void internalExecute();
 
   private void postProcessParameters() {
     if (this.scmHandler == null) {
-        this.scmHandler = new ScmHandlerGitImpl();
+        if ("GIT_CLI".equals(this.scmType)) {
+          this.scmHandler = new ScmHandlerGitCliImpl();
+        } else if ("FILESYSTEM".equals(this.scmType)) {
+          this.scmHandler = new ScmHandlerFilesystemImpl();
+        } else {
+          this.scmHandler = new ScmHandlerGitImpl();
+        }
     }
 
     Properties properties = new Properties();
     properties.setProperty("gitDoPush", String.valueOf(this.gitDoPush));
+    properties.setProperty("gitPushRetries", String.valueOf(this.gitPushRetries));
+    properties.setProperty("gitChangeDetection", this.gitChangeDetection);
+    properties.setProperty("gitShallowPolicy", this.gitShallowPolicy);
+    properties.setProperty("gitThreads", String.valueOf(this.scmThreads));
+    properties.setProperty("gitFirstParent", String.valueOf(this.gitFirstParent));
+    properties.setProperty("gitVersionLedger", String.valueOf(this.versionLedger));
+    if (this.ignoredPaths != null && !this.ignoredPaths.isEmpty()) {
+      properties.setProperty("gitIgnoredPaths", String.join("\n", this.ignoredPaths));
+    }
+    if (this.ignoredAuthors != null && !this.ignoredAuthors.isEmpty()) {
+      properties.setProperty("gitIgnoredAuthors", String.join("\n", this.ignoredAuthors));
+    }
+    if (this.incrementalChangeDetection) {
+      properties.setProperty("gitChangeStateFile", getChangeDetectionStateFile().getAbsolutePath());
+    }
+    if ("FILESYSTEM".equals(this.scmType)) {
+      properties.setProperty("filesystemSnapshotFile", getFilesystemSnapshotFile().getAbsolutePath());
+      properties.setProperty("filesystemStateFiles", String.join("\n", getDirtyModulesRegistryFile().getAbsolutePath(),
+          getPomWriteJournalFile().getAbsolutePath(), getChangeDetectionStateFile().getAbsolutePath()));
+    }
 
     this.scmHandler.init(getMavenProject().getBasedir(), this.scmUser, this.scmPassword, properties);
 
@@ -189,6 +363,126 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
     return new File(this.mavenProject.getBasedir(), DIRTY_MODULES_REGISTRY_FILE);
   }
 
+  protected Date parseSinceDate() {
+    for (String pattern : new String[]{"yyyy-MM-dd HH:mm", "yyyy-MM-dd"}) {
+      try {
+        return new SimpleDateFormat(pattern).parse(this.sinceDate);
+      } catch (ParseException e) {
+        // Try next pattern
+      }
+    }
+    throw new NonSnapshotPluginException("Invalid sinceDate (expected yyyy-MM-dd or yyyy-MM-dd HH:mm): " + this.sinceDate);
+  }
+
+  protected File getChangeDetectionStateFile() {
+    return new File(this.mavenProject.getBasedir(), CHANGE_DETECTION_STATE_FILE);
+  }
+
+  protected File getFilesystemSnapshotFile() {
+    if (this.filesystemSnapshotFile != null) {
+      return this.filesystemSnapshotFile;
+    }
+    return new File(System.getProperty("user.home"), ".m2/nonsnapshot/" + this.mavenProject.getGroupId() + "/"
+        + this.mavenProject.getArtifactId() + "/" + FILESYSTEM_SNAPSHOT_FILE);
+  }
+
+  protected File getPomWriteJournalFile() {
+    return new File(this.mavenProject.getBasedir(), POM_WRITE_JOURNAL_FILE);
+  }
+
+  /**
+   * Finish or roll back the POM rewrite of a previous run which didn't complete (see {@link PomWriteJournal}).
+   * A roll back also removes the dirty modules registry.
+   *
+   * @param rollback boolean
+   * @return false if there was nothing to resume
+   */
+  protected boolean resumePomRewrite(boolean rollback) {
+    File journalFile = getPomWriteJournalFile();
+    if (!journalFile.exists()) {
+      return false;
+    }
+
+    PomWriteJournal journal = PomWriteJournal.read(journalFile, this.mavenProject.getBasedir());
+    int writtenCount = 0;
+    for (File pomFile : journal.getPomFiles()) {
+      if (rollback ? journal.rollback(pomFile, getMavenPomHandler()) : journal.finish(pomFile, getMavenPomHandler())) {
+        writtenCount++;
+      }
+    }
+
+    if (rollback) {
+      LOG.info("Rolled back the incomplete POM rewrite: {} of {} POM files restored", writtenCount, journal.getPomFiles().size());
+      getDirtyModulesRegistryFile().delete();
+    } else {
+      LOG.info("Finished the incomplete POM rewrite: {} of {} POM files written", writtenCount, journal.getPomFiles().size());
+    }
+    journal.delete();
+
+    return true;
+  }
+
+  /**
+   * Commit the POM files listed in the dirty modules registry (and delete it).
+   */
+  protected void commitDirtyModules() {
+    File dirtyModulesRegistryFile = getDirtyModulesRegistryFile();
+    LOG.debug("Reading POM files to commit from: {}", dirtyModulesRegistryFile.getAbsolutePath());
+
+    if (!dirtyModulesRegistryFile.exists()) {
+      LOG.info("File {} does not exist. Doing nothing.", dirtyModulesRegistryFile.getAbsolutePath());
+      return;
+    }
+
+    List<File> pomsToCommit = readPomFileList(dirtyModulesRegistryFile);
+    if (pomsToCommit.size() == 0) {
+      return;
+    }
+
+    try {
+      LOG.info("Committing {} POM files", pomsToCommit.size());
+      List<MavenModule> changedMavenModules = readChangedMavenModules(pomsToCommit);
+      String message = getCommitMessageUsingChangedMavenModules(changedMavenModules);
+      getScmHandler().commitFiles(pomsToCommit, message);
+      if (isTagVersions()) {
+        tagChangedMavenModules(changedMavenModules);
+      }
+      if (isVersionLedger()) {
+        getScmHandler().recordVersionUpdates(changedMavenModules);
+      }
+    } catch (RuntimeException e) {
+      if (isDontFailOnCommit()) {
+        LOG.warn("Error occurred during commit, ignoring it since dontFailOnCommit=true.", e);
+      } else {
+        throw e;
+      }
+    }
+  }
+
+  private List<File> readPomFileList(File inputFile) {
+    Set<File> pomFileList = new LinkedHashSet<>();
+    File baseDir = getMavenProject().getBasedir();
+
+    try {
+      BufferedReader reader = new BufferedReader(new FileReader(inputFile));
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        pomFileList.add(new File(baseDir, line + "/pom.xml").getCanonicalFile());
+      }
+
+      reader.close();
+
+      LOG.info("Deleting dirty modules registry file: {}", inputFile.getAbsolutePath());
+      inputFile.delete();
+
+      return new ArrayList<>(pomFileList);
+
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to read dirty modules registry file!", e);
+    }
+  }
+
   @Override
   public void contextualize(Context context) throws ContextException {
     this.plexusContainer = (PlexusContainer) context.get(PlexusConstants.PLEXUS_KEY);
@@ -210,6 +504,18 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
     this.scmPassword = scmPassword;
   }
 
+  public String getScmType() {
+    return scmType;
+  }
+
+  public void setScmType(String scmType) {
+    this.scmType = scmType;
+  }
+
+  public void setFilesystemSnapshotFile(File filesystemSnapshotFile) {
+    this.filesystemSnapshotFile = filesystemSnapshotFile;
+  }
+
   public boolean isGitDoPush() {
     return gitDoPush;
   }
@@ -218,6 +524,30 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
     this.gitDoPush = gitDoPush;
   }
 
+  public int getGitPushRetries() {
+    return gitPushRetries;
+  }
+
+  public void setGitPushRetries(int gitPushRetries) {
+    this.gitPushRetries = gitPushRetries;
+  }
+
+  public String getGitChangeDetection() {
+    return gitChangeDetection;
+  }
+
+  public void setGitChangeDetection(String gitChangeDetection) {
+    this.gitChangeDetection = gitChangeDetection;
+  }
+
+  public String getGitShallowPolicy() {
+    return gitShallowPolicy;
+  }
+
+  public void setGitShallowPolicy(String gitShallowPolicy) {
+    this.gitShallowPolicy = gitShallowPolicy;
+  }
+
   public boolean isDeferPomCommit() {
     return deferPomCommit;
   }
@@ -274,6 +604,70 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
     this.generateChangedProjectsPropertyFile = generateChangedProjectsPropertyFile;
   }
 
+  public String getSinceRevision() {
+    return sinceRevision;
+  }
+
+  public void setSinceRevision(String sinceRevision) {
+    this.sinceRevision = sinceRevision;
+  }
+
+  public String getSinceDate() {
+    return sinceDate;
+  }
+
+  public void setSinceDate(String sinceDate) {
+    this.sinceDate = sinceDate;
+  }
+
+  public int getScmThreads() {
+    return scmThreads;
+  }
+
+  public void setScmThreads(int scmThreads) {
+    this.scmThreads = scmThreads;
+  }
+
+  public int getPomWriterThreads() {
+    return pomWriterThreads;
+  }
+
+  public void setPomWriterThreads(int pomWriterThreads) {
+    this.pomWriterThreads = pomWriterThreads;
+  }
+
+  public boolean isIncrementalChangeDetection() {
+    return incrementalChangeDetection;
+  }
+
+  public void setIncrementalChangeDetection(boolean incrementalChangeDetection) {
+    this.incrementalChangeDetection = incrementalChangeDetection;
+  }
+
+  public boolean isGitFirstParent() {
+    return gitFirstParent;
+  }
+
+  public void setGitFirstParent(boolean gitFirstParent) {
+    this.gitFirstParent = gitFirstParent;
+  }
+
+  public List<String> getIgnoredPaths() {
+    return ignoredPaths;
+  }
+
+  public void setIgnoredPaths(List<String> ignoredPaths) {
+    this.ignoredPaths = ignoredPaths;
+  }
+
+  public List<String> getIgnoredAuthors() {
+    return ignoredAuthors;
+  }
+
+  public void setIgnoredAuthors(List<String> ignoredAuthors) {
+    this.ignoredAuthors = ignoredAuthors;
+  }
+
   public boolean isSkip() {
     return skip;
   }
@@ -386,6 +780,38 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
     this.useSnapshotVersion = useSnapshotVersion;
   }
 
+  public boolean isAllocateBuildNumbers() {
+    return allocateBuildNumbers;
+  }
+
+  public void setAllocateBuildNumbers(boolean allocateBuildNumbers) {
+    this.allocateBuildNumbers = allocateBuildNumbers;
+  }
+
+  public boolean isIncludeUncommittedChanges() {
+    return includeUncommittedChanges;
+  }
+
+  public void setIncludeUncommittedChanges(boolean includeUncommittedChanges) {
+    this.includeUncommittedChanges = includeUncommittedChanges;
+  }
+
+  public boolean isTagVersions() {
+    return tagVersions;
+  }
+
+  public void setTagVersions(boolean tagVersions) {
+    this.tagVersions = tagVersions;
+  }
+
+  public boolean isVersionLedger() {
+    return versionLedger;
+  }
+
+  public void setVersionLedger(boolean versionLedger) {
+    this.versionLedger = versionLedger;
+  }
+
   public String getReplaceSpecialSymbolsInVersionBy() {
     return replaceSpecialSymbolsInVersionBy;
   }
@@ -412,16 +838,32 @@ abstract class NonSnapshotBaseMojo extends AbstractMojo implements Contextualiza
         message.append(changedMavenModule.getVersion()).append("\n");
     }
     return ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of " + changedMavenModules.size() + " artifacts updated\n\n"
-            + "Changes:\n" + message;
+            + "Changes:\n" + message
+            + "\n" + ScmHandler.NONSNAPSHOT_COMMIT_TRAILER + "\n";
   }
 
   public String getCommitMessageUsingChangedPomFiles(List<File> changedPomFiles) {
-    List<MavenModule> changedMavenModules = new ArrayList<>();
+    return getCommitMessageUsingChangedMavenModules(readChangedMavenModules(changedPomFiles));
+  }
+
+  protected List<MavenModule> readChangedMavenModules(List<File> changedPomFiles) {
+    ModuleRegistry changedMavenModules = new ModuleRegistry();
     for (File changedPomFile : changedPomFiles) {
-      MavenModule mavenModule = getMavenPomHandler().readArtifact(changedPomFile);
-      changedMavenModules.add(mavenModule);
+      if (changedMavenModules.findByPomFile(changedPomFile) == null) {
+        changedMavenModules.add(getMavenPomHandler().readArtifact(changedPomFile));
+      }
+    }
+    return changedMavenModules.getModules();
+  }
+
+  protected void tagChangedMavenModules(List<MavenModule> changedMavenModules) {
+    List<String> tagNames = new ArrayList<>();
+    for (MavenModule changedMavenModule : changedMavenModules) {
+      String version = changedMavenModule.getNewVersion() != null ? changedMavenModule.getNewVersion() : changedMavenModule.getVersion();
+      tagNames.add(changedMavenModule.getArtifactId() + "-" + version);
     }
-    return getCommitMessageUsingChangedMavenModules(changedMavenModules);
+    LOG.info("Tagging {} updated modules", tagNames.size());
+    getScmHandler().createTags(tagNames);
   }
 }
 
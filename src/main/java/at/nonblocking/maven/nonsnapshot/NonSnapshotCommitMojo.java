@@ -15,82 +15,21 @@
  */
 package at.nonblocking.maven.nonsnapshot;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-
-import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 import org.apache.maven.plugins.annotations.Mojo;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
 
 /**
  * Goal to commit changed POM files if the updateVersions goal was called with deferPomCommit = true
+ * <br/>
+ * An incomplete POM rewrite of a previous run is finished first.
  *
  * @author Juergen Kofler
  */
 @Mojo(name = "commitVersions", aggregator = true)
 public class NonSnapshotCommitMojo extends NonSnapshotBaseMojo {
 
-  private static Logger LOG = LoggerFactory.getLogger(NonSnapshotCommitMojo.class);
-
   @Override
   protected void internalExecute() {
-    File dirtyModulesRegistryFile = getDirtyModulesRegistryFile();
-    LOG.debug("Reading POM files to commit from: {}", dirtyModulesRegistryFile.getAbsolutePath());
-
-    if (!dirtyModulesRegistryFile.exists()) {
-      LOG.info("File {} does not exist. Doing nothing.", dirtyModulesRegistryFile.getAbsolutePath());
-      return;
-    }
-
-    List<File> pomsToCommit = readPomFileList(dirtyModulesRegistryFile);
-    if (pomsToCommit.size() == 0) {
-      return;
-    }
-
-    try {
-      LOG.info("Committing {} POM files", pomsToCommit.size());
-      String message = getCommitMessageUsingChangedPomFiles(pomsToCommit);
-      getScmHandler().commitFiles(pomsToCommit, message);
-    } catch (RuntimeException e) {
-      if (isDontFailOnCommit()) {
-        LOG.warn("Error occurred during commit, ignoring it since dontFailOnCommit=true.", e);
-      } else {
-        throw e;
-      }
-    }
-  }
-
-  private List<File> readPomFileList(File inputFile) {
-    List<File> pomFileList = new ArrayList<>();
-    File baseDir = getMavenProject().getBasedir();
-
-    try {
-      BufferedReader reader = new BufferedReader(new FileReader(inputFile));
-
-      String line;
-      while ((line = reader.readLine()) != null) {
-        File pom = new File(baseDir, line + "/pom.xml").getCanonicalFile();
-        if (!pomFileList.contains(pom)) {
-          pomFileList.add(pom);
-        }
-      }
-
-      reader.close();
-
-      LOG.info("Deleting dirty modules registry file: {}", inputFile.getAbsolutePath());
-      inputFile.delete();
-
-      return pomFileList;
-
-    } catch (IOException e) {
-      throw new NonSnapshotPluginException("Failed to read dirty modules registry file!", e);
-    }
+    resumePomRewrite(false);
+    commitDirtyModules();
   }
 }
@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+import at.nonblocking.maven.nonsnapshot.version.BuildNumberAllocator;
 
 /**
  * Test Plugin Goal which not actually updates the POMs.
@@ -35,6 +36,23 @@ public class NonSnapshotPretendMojo extends NonSnapshotUpdateVersionsMojo {
 
   private static Logger LOG = LoggerFactory.getLogger(NonSnapshotPretendMojo.class);
 
+  /**
+   * Only look at the build number counters, a dry run must not reserve (and burn) build numbers.
+   */
+  @Override
+  protected BuildNumberAllocator getBuildNumberAllocator() {
+    return isAllocateBuildNumbers() ? getScmHandler()::peekBuildNumber : null;
+  }
+
+  @Override
+  protected boolean resumeIncompletePomRewrite() {
+    if (getPomWriteJournalFile().exists()) {
+      LOG.warn("Found an incomplete POM rewrite of a previous run: {}. Execute nonsnapshot:resume to finish it.",
+          getPomWriteJournalFile().getAbsolutePath());
+    }
+    return false;
+  }
+
   @Override
   protected void writeAndCommitArtifacts(List<MavenModule> mavenModules) {
     List<File> pomsToCommit = new ArrayList<>();
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Goal to finish (or roll back) a POM rewrite which was interrupted, e.g. because the JVM died.
+ * <br/>
+ * Only the POM files which don't have the planned content yet are written, and afterwards the changes are committed
+ * like the updateVersions goal would have done (unless deferPomCommit is true).
+ * The changes are not detected again.
+ */
+@Mojo(name = "resume", aggregator = true)
+public class NonSnapshotResumeMojo extends NonSnapshotBaseMojo {
+
+  private static Logger LOG = LoggerFactory.getLogger(NonSnapshotResumeMojo.class);
+
+  /**
+   * Restore the original content of the POM files instead of finishing the rewrite.
+   */
+  @Parameter(defaultValue = "false", property = "nonsnapshot.rollback")
+  private boolean rollback;
+
+  @Override
+  protected void internalExecute() {
+    if (!resumePomRewrite(this.rollback)) {
+      LOG.info("No incomplete POM rewrite found. Doing nothing.");
+      return;
+    }
+
+    if (this.rollback) {
+      return;
+    }
+
+    if (!isDeferPomCommit()) {
+      commitDirtyModules();
+    } else {
+      LOG.info("Deferring the POM commit. Execute nonsnapshot:commit to actually commit the changes.");
+    }
+  }
+
+  public boolean isRollback() {
+    return rollback;
+  }
+
+  public void setRollback(boolean rollback) {
+    this.rollback = rollback;
+  }
+}
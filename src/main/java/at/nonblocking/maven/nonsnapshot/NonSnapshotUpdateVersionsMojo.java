@@ -20,9 +20,10 @@ import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
 import at.nonblocking.maven.nonsnapshot.model.MavenArtifact;
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 import at.nonblocking.maven.nonsnapshot.model.MavenModuleDependency;
+import at.nonblocking.maven.nonsnapshot.model.ModuleRegistry;
 import at.nonblocking.maven.nonsnapshot.model.UpdatedUpstreamMavenArtifact;
+import at.nonblocking.maven.nonsnapshot.version.BuildNumberAllocator;
 import at.nonblocking.maven.nonsnapshot.version.NewVersionResolver;
-import com.google.common.io.Files;
 import org.apache.maven.model.Model;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.slf4j.Logger;
@@ -34,9 +35,20 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
-import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * Main Goal of this Plugin. <br/>
@@ -56,15 +68,23 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
 
   private static String LINE_SEPARATOR = System.getProperty("line.separator");
 
+  private ModuleRegistry moduleRegistry;
+  private Map<String, UpdatedUpstreamMavenArtifact> updatedUpstreamArtifacts = new HashMap<>();
+
   @Override
   protected void internalExecute() {
-    List<Model> mavenModels = getModuleTraverser().findAllModules(getMavenProject(), getMavenProject().getActiveProfiles());
+    if (resumeIncompletePomRewrite()) {
+      return;
+    }
+
+    List<Model> mavenModels = getModuleTraverser().findAllModules(getMavenProject(), getMavenProject().getActiveProfiles(), getMavenPomHandler());
 
     List<MavenModule> mavenModules = buildModules(mavenModels);
 
     MavenModule rootModule = mavenModules.get(0);
 
-    getDependencyTreeProcessor().buildDependencyTree(mavenModules);
+    this.moduleRegistry = new ModuleRegistry(mavenModules);
+    getDependencyTreeProcessor().buildDependencyTree(this.moduleRegistry);
 
     markDirtyWhenRevisionChangedOrInvalidQualifier(mavenModules);
 
@@ -102,7 +122,6 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
 
         for (MavenModule mavenModule : mavenModules) {
             if (mavenModule.isDirty() && mavenModule.getNewVersion() != null) {
-                getMavenPomHandler().updateArtifact(mavenModule);
                 LOG.debug("Add module to dirty registry list: {}", mavenModule.getPomFile().getAbsolutePath());
                 pomsToCommit.add(mavenModule.getPomFile());
                 modulesToCommit.add(mavenModule);
@@ -114,11 +133,20 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
         }
 
         if (pomsToCommit.size() > 0) {
+            PomWriteJournal journal = prepareArtifacts(modulesToCommit);
             writeDirtyModulesRegistry(pomsToCommit);
+            writeArtifacts(modulesToCommit, journal);
             if (!isDeferPomCommit()) {
                 LOG.info("Committing {} POM files", pomsToCommit.size());
                 String message = getCommitMessageUsingChangedMavenModules(modulesToCommit);
-                getScmHandler().commitFiles(pomsToCommit, message);
+                getScmHandler().commitFiles(pomsToCommit, message,
+                        conflictedPomFiles -> recomputeConflictedModules(conflictedPomFiles, modulesToCommit));
+                if (isTagVersions()) {
+                    tagChangedMavenModules(modulesToCommit);
+                }
+                if (isVersionLedger()) {
+                    getScmHandler().recordVersionUpdates(modulesToCommit);
+                }
             } else {
                 LOG.info("Deferring the POM commit. Execute nonsnapshot:commit to actually commit the changes.");
             }
@@ -127,7 +155,129 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
         }
     }
 
+  /**
+   * Finish the POM rewrite of a previous run which didn't complete, instead of detecting the changes again.
+   *
+   * @return true if there was one
+   */
+  protected boolean resumeIncompletePomRewrite() {
+    if (!getPomWriteJournalFile().exists()) {
+      return false;
+    }
+
+    LOG.warn("Found an incomplete POM rewrite of a previous run: {}. Finishing it.", getPomWriteJournalFile().getAbsolutePath());
+    resumePomRewrite(false);
+    if (!isDeferPomCommit()) {
+      commitDirtyModules();
+    } else {
+      LOG.info("Deferring the POM commit. Execute nonsnapshot:commit to actually commit the changes.");
+    }
+    return true;
+  }
+
+  /**
+   * Compute the new content of the POM files of given modules (in parallel) and collect it in a journal.
+   */
+  private PomWriteJournal prepareArtifacts(List<MavenModule> mavenModules) {
+    final PomWriteJournal journal = new PomWriteJournal(getPomWriteJournalFile(), getMavenProject().getBasedir());
+
+    forEachModuleInParallel(mavenModules, "prepare", mavenModule -> {
+      byte[] newContent = getMavenPomHandler().renderArtifact(mavenModule);
+      if (newContent != null) {
+        try {
+          journal.add(mavenModule.getPomFile(), Files.readAllBytes(mavenModule.getPomFile().toPath()), newContent);
+        } catch (IOException e) {
+          throw new NonSnapshotPluginException("Failed to read POM file: " + mavenModule.getPomFile().getAbsolutePath(), e);
+        }
+      }
+    });
+
+    return journal;
+  }
+
+  /**
+   * Write the journal and then the POM files (in parallel). The journal is only removed if all POM files have been written,
+   * otherwise the rewrite can be finished with the resume goal.
+   */
+  private void writeArtifacts(List<MavenModule> mavenModules, final PomWriteJournal journal) {
+    if (journal.isEmpty()) {
+      return;
+    }
+
+    journal.write();
+
+    List<MavenModule> changedModules = new ArrayList<>();
+    for (MavenModule mavenModule : mavenModules) {
+      if (journal.contains(mavenModule.getPomFile())) {
+        changedModules.add(mavenModule);
+      }
+    }
+
+    try {
+      forEachModuleInParallel(changedModules, "write", mavenModule -> journal.finish(mavenModule.getPomFile(), getMavenPomHandler()));
+    } catch (NonSnapshotPluginException e) {
+      LOG.error("The POM rewrite is incomplete. Execute nonsnapshot:resume to finish it or nonsnapshot:resume -Dnonsnapshot.rollback=true to roll it back.");
+      throw e;
+    }
+
+    journal.delete();
+  }
+
+  /**
+   * Run given task for all modules on a bounded number of worker threads (each POM is independent).
+   * All failures are collected and reported together.
+   */
+  private void forEachModuleInParallel(List<MavenModule> mavenModules, String action, final Consumer<MavenModule> task) {
+    if (mavenModules.isEmpty()) {
+      return;
+    }
+
+    int threads = getPomWriterThreads() > 0 ? getPomWriterThreads() : Runtime.getRuntime().availableProcessors();
+    int workerCount = Math.max(1, Math.min(threads, mavenModules.size()));
+    LOG.debug("Processing ({}) {} POM files with {} threads", new Object[]{action, mavenModules.size(), workerCount});
+
+    ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+    try {
+      List<Future<?>> futures = new ArrayList<>(mavenModules.size());
+      for (final MavenModule mavenModule : mavenModules) {
+        futures.add(executor.submit(() -> task.accept(mavenModule)));
+      }
+
+      NonSnapshotPluginException failure = null;
+      int failureCount = 0;
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          futures.get(i).get();
+        } catch (ExecutionException e) {
+          MavenModule mavenModule = mavenModules.get(i);
+          LOG.error("Failed to {} POM file of module {}:{}: {}",
+              new Object[]{action, mavenModule.getGroupId(), mavenModule.getArtifactId(), e.getCause().getMessage()});
+          if (failure == null) {
+            failure = new NonSnapshotPluginException("Failed to " + action + " POM file: " + mavenModule.getPomFile().getAbsolutePath(), e.getCause());
+          } else {
+            failure.addSuppressed(e.getCause());
+          }
+          failureCount++;
+        }
+      }
+
+      if (failure != null) {
+        if (failureCount > 1) {
+          throw new NonSnapshotPluginException("Failed to " + action + " " + failureCount + " POM files (see log)", failure);
+        }
+        throw failure;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new NonSnapshotPluginException("Interrupted while processing the POM files", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   protected void markDirtyWhenRevisionChangedOrInvalidQualifier(List<MavenModule> mavenModules) {
+    Map<MavenModule, File> changeScopes = new LinkedHashMap<>();
+
     for (MavenModule mavenModule : mavenModules) {
       if (mavenModule.getVersion() == null) {
         LOG.info("No version found for artifact {}:{}. Assigning a new version.", mavenModule.getGroupId(), mavenModule.getArtifactId());
@@ -149,23 +299,62 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
           mavenModule.setDirty(true);
 
         } else {
-          if (getScmHandler().checkChangesSinceLastUpdate(getChangeScope(mavenModule))) {
-            LOG.info("Module {}:{}: There were commits after last plugin increment. Assigning a new version.",
-                    mavenModule.getGroupId(), mavenModule.getArtifactId());
-            mavenModule.setDirty(true);
-          }
+          changeScopes.put(mavenModule, getChangeScope(mavenModule));
         }
       }
     }
-  }
 
-  private static File getChangeScope(MavenModule mavenModule) {
-    try {
-      if(Files.toString(mavenModule.getPomFile(), StandardCharsets.UTF_8).contains("<packaging>pom</packaging>")){
-        return mavenModule.getPomFile();
+    if (changeScopes.isEmpty()) {
+      return;
+    }
+
+    Map<File, Boolean> changes;
+    if (getSinceRevision() != null) {
+      LOG.info("Checking for changes since revision: {}", getSinceRevision());
+      changes = getScmHandler().checkChangesSinceRevision(changeScopes.values(), getSinceRevision());
+    } else if (getSinceDate() != null) {
+      LOG.info("Checking for changes since: {}", getSinceDate());
+      changes = getScmHandler().checkChangesSinceDate(changeScopes.values(), parseSinceDate());
+    } else {
+      changes = getScmHandler().checkChangesSinceLastUpdate(changeScopes.values());
+    }
+
+    Set<File> uncommittedChangeScopes = new HashSet<>();
+    if (isIncludeUncommittedChanges()) {
+      LOG.info("Checking for uncommitted changes");
+      for (Map.Entry<File, Boolean> uncommittedChange : getScmHandler().checkUncommittedChanges(changeScopes.values()).entrySet()) {
+        if (Boolean.TRUE.equals(uncommittedChange.getValue())) {
+          uncommittedChangeScopes.add(uncommittedChange.getKey());
+        }
+      }
+    }
+
+    for (Map.Entry<MavenModule, File> changeScope : changeScopes.entrySet()) {
+      if (Boolean.TRUE.equals(changes.get(changeScope.getValue()))) {
+        MavenModule mavenModule = changeScope.getKey();
+        if (getSinceRevision() != null) {
+          LOG.info("Module {}:{}: There were changes since revision {}. Assigning a new version.",
+                  new Object[]{mavenModule.getGroupId(), mavenModule.getArtifactId(), getSinceRevision()});
+        } else if (getSinceDate() != null) {
+          LOG.info("Module {}:{}: There were commits since {}. Assigning a new version.",
+                  new Object[]{mavenModule.getGroupId(), mavenModule.getArtifactId(), getSinceDate()});
+        } else {
+          LOG.info("Module {}:{}: There were commits after last plugin increment. Assigning a new version.",
+                  mavenModule.getGroupId(), mavenModule.getArtifactId());
+        }
+        mavenModule.setDirty(true);
+
+      } else if (uncommittedChangeScopes.contains(changeScope.getValue())) {
+        MavenModule mavenModule = changeScope.getKey();
+        LOG.info("Module {}:{}: There are uncommitted changes. Assigning a new version.", mavenModule.getGroupId(), mavenModule.getArtifactId());
+        mavenModule.setDirty(true);
       }
-    } catch (IOException e) {
-      throw new RuntimeException(e);
+    }
+  }
+
+  private File getChangeScope(MavenModule mavenModule) {
+    if ("pom".equals(getMavenPomHandler().readModel(mavenModule.getPomFile()).getPackaging())) {
+      return mavenModule.getPomFile();
     }
     return mavenModule.getPomFile().getParentFile();
   }
@@ -190,24 +379,41 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
     }
   }
 
+  /**
+   * Check if given reference is an upstream dependency with a newer version.
+   * References to workspace modules are skipped, and each upstream artifact (groupId:artifactId:type:version) is resolved only once.
+   */
   protected UpdatedUpstreamMavenArtifact updateUpstreamArtifact(MavenArtifact upstreamArtifact) {
-    if (!(upstreamArtifact instanceof MavenModule)) {
-      ProcessedUpstreamDependency upstreamDependency = getUpstreamDependencyHandler().findMatch(upstreamArtifact, getProcessedUpstreamDependencies());
-      if (upstreamDependency != null) {
-        LOG.debug("Upstream dependency found: {}:{}", upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId());
-        try {
-          String latestVersion = getUpstreamDependencyHandler().resolveLatestVersion(upstreamArtifact, upstreamDependency, getRepositorySystem(), getRepositorySystemSession(), getRemoteRepositories());
-          if (latestVersion != null) {
-            LOG.info("Found newer version for upstream dependency {}:{}: {}", new Object[]{upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), latestVersion});
-            return new UpdatedUpstreamMavenArtifact(upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), upstreamArtifact.getVersion(), upstreamArtifact.getType(), latestVersion);
-          }
-        } catch (NonSnapshotDependencyResolverException e) {
-          if (isDontFailOnUpstreamVersionResolution()) {
-            LOG.warn("Upstream dependency resolution failed (cannot update {}:{}). Error: {}",
-                new Object[]{upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), e.getMessage()});
-          } else {
-            throw e;
-          }
+    if (upstreamArtifact instanceof MavenModule || (this.moduleRegistry != null && this.moduleRegistry.find(upstreamArtifact) != null)) {
+      return null;
+    }
+
+    String key = upstreamArtifact.toString();
+    if (this.updatedUpstreamArtifacts.containsKey(key)) {
+      return this.updatedUpstreamArtifacts.get(key);
+    }
+
+    UpdatedUpstreamMavenArtifact updatedUpstreamArtifact = resolveUpstreamArtifact(upstreamArtifact);
+    this.updatedUpstreamArtifacts.put(key, updatedUpstreamArtifact);
+    return updatedUpstreamArtifact;
+  }
+
+  private UpdatedUpstreamMavenArtifact resolveUpstreamArtifact(MavenArtifact upstreamArtifact) {
+    ProcessedUpstreamDependency upstreamDependency = getUpstreamDependencyHandler().findMatch(upstreamArtifact, getProcessedUpstreamDependencies());
+    if (upstreamDependency != null) {
+      LOG.debug("Upstream dependency found: {}:{}", upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId());
+      try {
+        String latestVersion = getUpstreamDependencyHandler().resolveLatestVersion(upstreamArtifact, upstreamDependency, getRepositorySystem(), getRepositorySystemSession(), getRemoteRepositories());
+        if (latestVersion != null) {
+          LOG.info("Found newer version for upstream dependency {}:{}: {}", new Object[]{upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), latestVersion});
+          return new UpdatedUpstreamMavenArtifact(upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), upstreamArtifact.getVersion(), upstreamArtifact.getType(), latestVersion);
+        }
+      } catch (NonSnapshotDependencyResolverException e) {
+        if (isDontFailOnUpstreamVersionResolution()) {
+          LOG.warn("Upstream dependency resolution failed (cannot update {}:{}). Error: {}",
+              new Object[]{upstreamArtifact.getGroupId(), upstreamArtifact.getArtifactId(), e.getMessage()});
+        } else {
+          throw e;
         }
       }
     }
@@ -228,10 +434,7 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
         if (!getScmHandler().isWorkingCopy(modulesPath)) {
           throw new NonSnapshotPluginException("Module path is no working directory: " + modulesPath);
         }
-        String branch = getBranchName() != null ? getBranchName() : getScmHandler().getBranchName();
-        NewVersionResolver resolver = new NewVersionResolver(isAppendBranchNameToVersion(), isUseSnapshotVersion(),
-                getIncrementVersionPattern(), getReplaceSpecialSymbolsInVersionBy());
-        String newVersion = resolver.resolveNewVersion(mavenModule.getVersion(), branch);
+        String newVersion = resolveNewVersion(mavenModule);
         mavenModule.setNewVersion(newVersion);
         LOG.info("{}:{}:{} -> {}", new Object[]{
                 mavenModule.getGroupId(),
@@ -242,6 +445,149 @@ public class NonSnapshotUpdateVersionsMojo extends NonSnapshotBaseMojo {
     }
   }
 
+  private String resolveNewVersion(MavenModule mavenModule) {
+    String branch = getBranchName() != null ? getBranchName() : getScmHandler().getBranchName();
+    NewVersionResolver resolver = new NewVersionResolver(isAppendBranchNameToVersion(), isUseSnapshotVersion(),
+            getIncrementVersionPattern(), getReplaceSpecialSymbolsInVersionBy(), getBuildNumberAllocator());
+    return resolver.resolveNewVersion(mavenModule.getGroupId(), mavenModule.getArtifactId(), mavenModule.getVersion(), branch);
+  }
+
+  /**
+   * The allocator for the build numbers if allocateBuildNumbers is set, null otherwise.
+   */
+  protected BuildNumberAllocator getBuildNumberAllocator() {
+    return isAllocateBuildNumbers() ? getScmHandler()::allocateBuildNumber : null;
+  }
+
+  /**
+   * Called when the version update could not be replayed onto a newer upstream commit.
+   * The conflicted POM files contain the upstream content, so their versions are computed again from that.
+   * <br/>
+   * The conflicted modules are recomputed in dependency order (parents and dependencies first) before any POM is written.
+   * Then the conflicted POMs and the (merged) POMs of all other updated modules which reference a recomputed module
+   * are rendered again, so every reference carries the recomputed version.
+   */
+  private String recomputeConflictedModules(List<File> conflictedPomFiles, List<MavenModule> modulesToCommit) {
+    ModuleRegistry modulesToCommitRegistry = new ModuleRegistry(modulesToCommit);
+    ModuleRegistry recomputedModulesRegistry = new ModuleRegistry();
+    for (File conflictedPomFile : conflictedPomFiles) {
+      recomputedModulesRegistry.add(getMavenPomHandler().readArtifact(conflictedPomFile));
+    }
+
+    List<MavenModule> recomputedModules = sortByDependencies(recomputedModulesRegistry);
+    for (MavenModule upstreamModule : recomputedModules) {
+      linkReferences(upstreamModule, recomputedModulesRegistry, modulesToCommitRegistry);
+
+      upstreamModule.setDirty(true);
+      upstreamModule.setNewVersion(resolveNewVersion(upstreamModule));
+      MavenModule mavenModule = modulesToCommitRegistry.find(upstreamModule);
+      if (mavenModule != null) {
+        mavenModule.setNewVersion(upstreamModule.getNewVersion());
+      }
+
+      LOG.info("{}:{}:{} -> {} (recomputed after concurrent upstream change)", new Object[]{
+              upstreamModule.getGroupId(),
+              upstreamModule.getArtifactId(),
+              upstreamModule.getVersion(),
+              upstreamModule.getNewVersion()});
+    }
+
+    for (MavenModule upstreamModule : recomputedModules) {
+      getMavenPomHandler().updateArtifact(upstreamModule);
+    }
+
+    for (MavenModule mavenModule : modulesToCommit) {
+      if (recomputedModulesRegistry.findByPomFile(mavenModule.getPomFile()) != null
+          || !referencesAny(mavenModule, recomputedModulesRegistry)) {
+        continue;
+      }
+
+      // Only the references to recomputed modules are rendered, the merged POM has the other versions already
+      MavenModule mergedModule = getMavenPomHandler().readArtifact(mavenModule.getPomFile());
+      linkReferences(mergedModule, recomputedModulesRegistry, null);
+      mergedModule.setDirty(true);
+      mergedModule.setNewVersion(mavenModule.getNewVersion());
+      getMavenPomHandler().updateArtifact(mergedModule);
+      LOG.info("{}:{}: References to recomputed modules updated", mavenModule.getGroupId(), mavenModule.getArtifactId());
+    }
+
+    return getCommitMessageUsingChangedMavenModules(modulesToCommit);
+  }
+
+  /**
+   * Order the modules of given registry so parents and dependencies (within the registry) come first.
+   * Cycles are broken in registry order.
+   */
+  private static List<MavenModule> sortByDependencies(ModuleRegistry moduleRegistry) {
+    Set<MavenModule> sortedModules = new LinkedHashSet<>();
+    Set<MavenModule> visitingModules = new HashSet<>();
+    for (MavenModule mavenModule : moduleRegistry.getModules()) {
+      addWithDependencies(mavenModule, moduleRegistry, visitingModules, sortedModules);
+    }
+    return new ArrayList<>(sortedModules);
+  }
+
+  private static void addWithDependencies(MavenModule mavenModule, ModuleRegistry moduleRegistry,
+                                          Set<MavenModule> visitingModules, Set<MavenModule> sortedModules) {
+    if (sortedModules.contains(mavenModule) || !visitingModules.add(mavenModule)) {
+      return;
+    }
+
+    List<MavenArtifact> references = new ArrayList<>();
+    if (mavenModule.getParent() != null) {
+      references.add(mavenModule.getParent());
+    }
+    for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
+      references.add(dependency.getArtifact());
+    }
+    for (MavenArtifact reference : references) {
+      MavenModule referencedModule = moduleRegistry.find(reference);
+      if (referencedModule != null) {
+        addWithDependencies(referencedModule, moduleRegistry, visitingModules, sortedModules);
+      }
+    }
+
+    sortedModules.add(mavenModule);
+  }
+
+  /**
+   * Point the parent and dependency references of given module to the modules of the first registry which contains them.
+   */
+  private static void linkReferences(MavenModule mavenModule, ModuleRegistry primaryRegistry, ModuleRegistry secondaryRegistry) {
+    if (mavenModule.getParent() != null) {
+      MavenModule parentModule = findModule(mavenModule.getParent(), primaryRegistry, secondaryRegistry);
+      if (parentModule != null) {
+        mavenModule.setParent(parentModule);
+      }
+    }
+    for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
+      MavenModule dependencyModule = findModule(dependency.getArtifact(), primaryRegistry, secondaryRegistry);
+      if (dependencyModule != null) {
+        dependency.setArtifact(dependencyModule);
+      }
+    }
+  }
+
+  private static MavenModule findModule(MavenArtifact artifact, ModuleRegistry primaryRegistry, ModuleRegistry secondaryRegistry) {
+    MavenModule module = primaryRegistry.find(artifact);
+    if (module == null && secondaryRegistry != null) {
+      module = secondaryRegistry.find(artifact);
+    }
+    return module;
+  }
+
+  private static boolean referencesAny(MavenModule mavenModule, ModuleRegistry moduleRegistry) {
+    if (mavenModule.getParent() != null && moduleRegistry.find(mavenModule.getParent()) != null) {
+      return true;
+    }
+    for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
+      if (moduleRegistry.find(dependency.getArtifact()) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private void writeDirtyModulesRegistry(List<File> pomFileList) {
     File dirtyModulesRegistryFile = getDirtyModulesRegistryFile();
     LOG.info("Writing dirty modules registry to: {}", dirtyModulesRegistryFile.getAbsolutePath());
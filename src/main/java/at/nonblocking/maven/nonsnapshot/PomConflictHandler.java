@@ -0,0 +1,33 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Recomputes the versions of POM files whose changes could not be replayed onto a newer upstream commit.
+ */
+public interface PomConflictHandler {
+
+  /**
+   * The given POM files contain the upstream content. Update their versions again and return the new commit message.
+   *
+   * @param conflictedPomFiles List<File>
+   * @return String
+   */
+  String resolveConflicts(List<File> conflictedPomFiles);
+}
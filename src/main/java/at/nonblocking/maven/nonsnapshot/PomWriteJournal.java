@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Write-ahead journal of a POM rewrite.
+ * <br/>
+ * Before any POM is written the original and the new content of all POM files are stored (and synced to disk)
+ * in the journal file, so a run which died halfway can be finished or rolled back without detecting the changes again.
+ * Each line contains the POM path relative to the base directory, the original and the new content (Base64 encoded).
+ */
+class PomWriteJournal {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PomWriteJournal.class);
+
+  private static final String HEADER = "#nonsnapshot POM write journal v1";
+
+  private final File journalFile;
+  private final File baseDir;
+  private final Map<File, Entry> entries = new LinkedHashMap<>();
+
+  PomWriteJournal(File journalFile, File baseDir) {
+    this.journalFile = journalFile;
+    this.baseDir = baseDir;
+  }
+
+  static PomWriteJournal read(File journalFile, File baseDir) {
+    PomWriteJournal journal = new PomWriteJournal(journalFile, baseDir);
+
+    try {
+      List<String> lines = Files.readAllLines(journalFile.toPath(), StandardCharsets.UTF_8);
+      if (lines.isEmpty() || !HEADER.equals(lines.get(0))) {
+        throw new NonSnapshotPluginException("Invalid POM write journal: " + journalFile.getAbsolutePath());
+      }
+      for (String line : lines.subList(1, lines.size())) {
+        String[] parts = line.split("\t");
+        if (parts.length != 3) {
+          throw new NonSnapshotPluginException("Invalid POM write journal (truncated?): " + journalFile.getAbsolutePath());
+        }
+        journal.add(new File(baseDir, parts[0]).getCanonicalFile(), Base64.getDecoder().decode(parts[1]), Base64.getDecoder().decode(parts[2]));
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      throw new NonSnapshotPluginException("Failed to read POM write journal: " + journalFile.getAbsolutePath(), e);
+    }
+
+    return journal;
+  }
+
+  synchronized void add(File pomFile, byte[] originalContent, byte[] newContent) {
+    this.entries.put(pomFile, new Entry(originalContent, newContent));
+  }
+
+  synchronized List<File> getPomFiles() {
+    return new ArrayList<>(this.entries.keySet());
+  }
+
+  synchronized boolean contains(File pomFile) {
+    return this.entries.containsKey(pomFile);
+  }
+
+  synchronized boolean isEmpty() {
+    return this.entries.isEmpty();
+  }
+
+  /**
+   * Write the journal to a temporary file, sync it and move it in place, so it's either complete or missing.
+   */
+  synchronized void write() {
+    LOG.debug("Writing POM write journal to: {}", this.journalFile.getAbsolutePath());
+
+    try {
+      StringBuilder content = new StringBuilder(HEADER).append('\n');
+      Map<String, Entry> sortedEntries = new TreeMap<>();
+      for (Map.Entry<File, Entry> entry : this.entries.entrySet()) {
+        sortedEntries.put(PathUtil.relativePath(this.baseDir, entry.getKey()), entry.getValue());
+      }
+      for (Map.Entry<String, Entry> entry : sortedEntries.entrySet()) {
+        content.append(entry.getKey()).append('\t')
+            .append(Base64.getEncoder().encodeToString(entry.getValue().originalContent)).append('\t')
+            .append(Base64.getEncoder().encodeToString(entry.getValue().newContent)).append('\n');
+      }
+
+      Path tempFile = Files.createTempFile(this.journalFile.getAbsoluteFile().getParentFile().toPath(), ".journal", ".tmp");
+      try {
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+          ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+          channel.force(true);
+        }
+        try {
+          Files.move(tempFile, this.journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tempFile, this.journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(tempFile);
+      }
+
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to write POM write journal: " + this.journalFile.getAbsolutePath(), e);
+    }
+  }
+
+  /**
+   * Write the new content of given POM file, unless it's already there.
+   *
+   * @return true if the file was written
+   */
+  boolean finish(File pomFile, MavenPomHandler mavenPomHandler) {
+    Entry entry = getEntry(pomFile);
+    byte[] currentContent = readContent(pomFile);
+    if (Arrays.equals(currentContent, entry.newContent)) {
+      return false;
+    }
+    if (!Arrays.equals(currentContent, entry.originalContent)) {
+      throw new NonSnapshotPluginException("POM file has been modified since the journal was written: " + pomFile.getAbsolutePath());
+    }
+    mavenPomHandler.writePom(pomFile, entry.newContent);
+    return true;
+  }
+
+  /**
+   * Restore the original content of given POM file, unless it's still there.
+   *
+   * @return true if the file was written
+   */
+  boolean rollback(File pomFile, MavenPomHandler mavenPomHandler) {
+    Entry entry = getEntry(pomFile);
+    byte[] currentContent = readContent(pomFile);
+    if (Arrays.equals(currentContent, entry.originalContent)) {
+      return false;
+    }
+    if (!Arrays.equals(currentContent, entry.newContent)) {
+      throw new NonSnapshotPluginException("POM file has been modified since the journal was written: " + pomFile.getAbsolutePath());
+    }
+    mavenPomHandler.writePom(pomFile, entry.originalContent);
+    return true;
+  }
+
+  void delete() {
+    LOG.debug("Deleting POM write journal: {}", this.journalFile.getAbsolutePath());
+    try {
+      Files.deleteIfExists(this.journalFile.toPath());
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to delete POM write journal: " + this.journalFile.getAbsolutePath(), e);
+    }
+  }
+
+  private synchronized Entry getEntry(File pomFile) {
+    Entry entry = this.entries.get(pomFile);
+    if (entry == null) {
+      throw new NonSnapshotPluginException("POM file not in journal: " + pomFile.getAbsolutePath());
+    }
+    return entry;
+  }
+
+  private static byte[] readContent(File pomFile) {
+    try {
+      return Files.readAllBytes(pomFile.toPath());
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to read POM file: " + pomFile.getAbsolutePath(), e);
+    }
+  }
+
+  private static class Entry {
+
+    final byte[] originalContent;
+    final byte[] newContent;
+
+    Entry(byte[] originalContent, byte[] newContent) {
+      this.originalContent = originalContent;
+      this.newContent = newContent;
+    }
+  }
+}
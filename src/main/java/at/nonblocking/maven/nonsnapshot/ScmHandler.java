@@ -15,9 +15,13 @@
  */
 package at.nonblocking.maven.nonsnapshot;
 
+import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+
 import java.io.File;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -29,6 +33,11 @@ public interface ScmHandler {
 
   String NONSNAPSHOT_COMMIT_MESSAGE_PREFIX = "Nonsnapshot Plugin:";
 
+  /**
+   * Trailer added to all version update commits, so they can be recognized without decoding the message.
+   */
+  String NONSNAPSHOT_COMMIT_TRAILER = "Nonsnapshot-Version-Bump: true";
+
   /**
    * Check if the project directory is a even a working copy
    *
@@ -46,6 +55,17 @@ public interface ScmHandler {
    */
   boolean checkChangesSinceRevision(File moduleDirectory, String revisionId);
 
+  /**
+   * Check if there has been changes since given revisionId for all given modules at once.
+   * <br/>
+   * Returns an entry for each given module directory (or POM file).
+   *
+   * @param moduleDirectories Collection<File>
+   * @param revisionId String
+   * @return Map<File, Boolean>
+   */
+  Map<File, Boolean> checkChangesSinceRevision(Collection<File> moduleDirectories, String revisionId);
+
   /**
    * Check if there has been changes since given date
    *
@@ -55,6 +75,17 @@ public interface ScmHandler {
    */
   boolean checkChangesSinceDate(File moduleDirectory, Date date);
 
+  /**
+   * Check if there has been changes since given date for all given modules at once.
+   * <br/>
+   * Returns an entry for each given module directory (or POM file).
+   *
+   * @param moduleDirectories Collection<File>
+   * @param date Date
+   * @return Map<File, Boolean>
+   */
+  Map<File, Boolean> checkChangesSinceDate(Collection<File> moduleDirectories, Date date);
+
   /**
    * Check if there has been changes since last version up
    *
@@ -63,6 +94,26 @@ public interface ScmHandler {
    */
   boolean checkChangesSinceLastUpdate(File moduleDirectory);
 
+  /**
+   * Check if there has been changes since last version up for all given modules at once.
+   * <br/>
+   * Returns an entry for each given module directory (or POM file).
+   *
+   * @param moduleDirectories Collection<File>
+   * @return Map<File, Boolean>
+   */
+  Map<File, Boolean> checkChangesSinceLastUpdate(Collection<File> moduleDirectories);
+
+  /**
+   * Check if there are uncommitted changes (staged, modified or untracked files) for all given modules at once.
+   * <br/>
+   * Returns an entry for each given module directory (or POM file).
+   *
+   * @param moduleDirectories Collection<File>
+   * @return Map<File, Boolean>
+   */
+  Map<File, Boolean> checkUncommittedChanges(Collection<File> moduleDirectories);
+
   /**
    * Commit the given path to the remote repository.
    *
@@ -71,6 +122,63 @@ public interface ScmHandler {
    */
   void commitFiles(List<File> files, String commitMessage);
 
+  /**
+   * Commit the given path to the remote repository.
+   * <br/>
+   * If the remote has moved on in the meantime, the commit is replayed onto the new upstream commit
+   * and the given handler is asked to recompute the versions of conflicting POM files.
+   *
+   * @param files           List<File>
+   * @param commitMessage   String
+   * @param conflictHandler PomConflictHandler
+   */
+  void commitFiles(List<File> files, String commitMessage, PomConflictHandler conflictHandler);
+
+  /**
+   * Create a lightweight tag with each given name on HEAD (and push them all at once if pushing is enabled).
+   *
+   * @param tagNames List<String>
+   */
+  void createTags(List<String> tagNames);
+
+  /**
+   * Add the given modules with their new version and the HEAD commit (the version update commit) to the version ledger.
+   *
+   * @param mavenModules List<MavenModule>
+   */
+  void recordVersionUpdates(List<MavenModule> mavenModules);
+
+  /**
+   * Look up the commit which updated given module to given version in the version ledger.
+   *
+   * @param groupId String
+   * @param artifactId String
+   * @param version String
+   * @return String the commit id or null if unknown
+   */
+  String findVersionUpdateCommit(String groupId, String artifactId, String version);
+
+  /**
+   * Atomically reserve the next build number of given module, so concurrent runs never get the same one.
+   *
+   * @param groupId String
+   * @param artifactId String
+   * @param minimum int the build number which would be used without allocation
+   * @return int
+   */
+  int allocateBuildNumber(String groupId, String artifactId, int minimum);
+
+  /**
+   * The build number {@link #allocateBuildNumber(String, String, int)} would currently return, without reserving it
+   * (e.g. for the pretend goal).
+   *
+   * @param groupId String
+   * @param artifactId String
+   * @param minimum int the build number which would be used without allocation
+   * @return int
+   */
+  int peekBuildNumber(String groupId, String artifactId, int minimum);
+
   /**
    * Set the repository credentials
    *
@@ -82,4 +190,9 @@ public interface ScmHandler {
   void init(File baseDir, String scmUser, String scmPassword, Properties properties);
 
   String getBranchName();
+
+  /**
+   * Release the resources (repository, helper processes) acquired since {@link #init}
+   */
+  void close();
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which changes don't dirty a module.
+ * <br/>
+ * Ignored paths are globs on the repository relative path (e.g. **&#47;README.md, **&#47;src/test/**),
+ * where * matches within a path segment and ** across segments.
+ * Ignored authors are regular expressions which are searched in the author and committer ("Name &lt;email&gt;").
+ */
+class ChangeRelevance {
+
+  private final List<String> ignoredPathGlobs;
+  private final List<String> ignoredAuthorPatterns;
+  private final List<Pattern> ignoredPaths = new ArrayList<>();
+  private final List<Pattern> ignoredAuthors = new ArrayList<>();
+
+  ChangeRelevance(Collection<String> ignoredPathGlobs, Collection<String> ignoredAuthorPatterns) {
+    this.ignoredPathGlobs = new ArrayList<>(ignoredPathGlobs);
+    this.ignoredAuthorPatterns = new ArrayList<>(ignoredAuthorPatterns);
+    for (String glob : ignoredPathGlobs) {
+      this.ignoredPaths.add(globToPattern(glob));
+    }
+    for (String pattern : ignoredAuthorPatterns) {
+      this.ignoredAuthors.add(Pattern.compile(pattern));
+    }
+  }
+
+  boolean hasIgnoredPaths() {
+    return !this.ignoredPaths.isEmpty();
+  }
+
+  boolean hasIgnoredAuthors() {
+    return !this.ignoredAuthors.isEmpty();
+  }
+
+  boolean isIgnoredPath(String path) {
+    for (Pattern ignoredPath : this.ignoredPaths) {
+      if (ignoredPath.matcher(path).matches()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Check the author and committer of given commit. Requires the commit body.
+   *
+   * @param commit RevCommit
+   * @return boolean
+   */
+  boolean isIgnoredCommit(RevCommit commit) {
+    return isIgnoredIdent(commit.getAuthorIdent()) || isIgnoredIdent(commit.getCommitterIdent());
+  }
+
+  private boolean isIgnoredIdent(PersonIdent ident) {
+    return ident != null && isIgnoredPerson(ident.getName() + " <" + ident.getEmailAddress() + ">");
+  }
+
+  /**
+   * Check given author or committer.
+   *
+   * @param person String Name &lt;email&gt;
+   * @return boolean
+   */
+  boolean isIgnoredPerson(String person) {
+    for (Pattern ignoredAuthor : this.ignoredAuthors) {
+      if (ignoredAuthor.matcher(person).find()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A string which changes with the configuration, so persisted results of a different configuration can be detected.
+   *
+   * @return String
+   */
+  String getFingerprint() {
+    return "ignoredPaths=" + this.ignoredPathGlobs + ";ignoredAuthors=" + this.ignoredAuthorPatterns;
+  }
+
+  static Pattern globToPattern(String glob) {
+    StringBuilder regex = new StringBuilder();
+    int i = 0;
+    while (i < glob.length()) {
+      char c = glob.charAt(i);
+      if (glob.startsWith("**/", i)) {
+        regex.append("(.*/)?");
+        i += 3;
+      } else if (glob.startsWith("**", i)) {
+        regex.append(".*");
+        i += 2;
+      } else if (c == '*') {
+        regex.append("[^/]*");
+        i++;
+      } else if (c == '?') {
+        regex.append("[^/]");
+        i++;
+      } else {
+        regex.append(Pattern.quote(String.valueOf(c)));
+        i++;
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+}
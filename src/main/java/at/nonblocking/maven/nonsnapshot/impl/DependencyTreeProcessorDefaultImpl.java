@@ -28,6 +28,7 @@ import at.nonblocking.maven.nonsnapshot.DependencyTreeProcessor;
 import at.nonblocking.maven.nonsnapshot.model.MavenArtifact;
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 import at.nonblocking.maven.nonsnapshot.model.MavenModuleDependency;
+import at.nonblocking.maven.nonsnapshot.model.ModuleRegistry;
 
 /**
  * Default {@link DependencyTreeProcessor} implementation.
@@ -41,9 +42,14 @@ public class DependencyTreeProcessorDefaultImpl implements DependencyTreeProcess
 
   @Override
   public void buildDependencyTree(List<MavenModule> mavenModules) {
-    for (MavenModule mavenModule : mavenModules) {
+    buildDependencyTree(new ModuleRegistry(mavenModules));
+  }
+
+  @Override
+  public void buildDependencyTree(ModuleRegistry moduleRegistry) {
+    for (MavenModule mavenModule : moduleRegistry.getModules()) {
       if (mavenModule.getParent() != null) {
-        MavenModule parentModule = findArtifact(mavenModules, mavenModule.getParent().getGroupId(), mavenModule.getParent().getArtifactId());
+        MavenModule parentModule = moduleRegistry.find(mavenModule.getParent());
         if (parentModule != null) {
           parentModule.getChildren().add(mavenModule);
           mavenModule.setParent(parentModule);
@@ -51,8 +57,7 @@ public class DependencyTreeProcessorDefaultImpl implements DependencyTreeProcess
       }
 
       for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
-        MavenModule dependencyModule = findArtifact(mavenModules, dependency.getArtifact().getGroupId(), dependency.getArtifact()
-            .getArtifactId());
+        MavenModule dependencyModule = moduleRegistry.find(dependency.getArtifact());
         if (dependencyModule != null) {
           dependency.setArtifact(dependencyModule);
         }
@@ -60,16 +65,6 @@ public class DependencyTreeProcessorDefaultImpl implements DependencyTreeProcess
     }
   }
 
-  private MavenModule findArtifact(List<MavenModule> artifacts, String groupId, String artifactId) {
-    for (MavenModule artifact : artifacts) {
-      if (groupId.equals(artifact.getGroupId()) && artifactId.equals(artifact.getArtifactId())) {
-        return artifact;
-      }
-    }
-
-    return null;
-  }
-
   @Override
   public boolean markAllArtifactsDirtyWithDirtyDependencies(List<MavenModule> mavenModules) {
     boolean changes = false;
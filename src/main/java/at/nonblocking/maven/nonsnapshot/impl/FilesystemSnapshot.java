@@ -0,0 +1,216 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent state of the filesystem handler: a content hash manifest of all files and the digest of each
+ * module scope at the last version update.
+ * <br/>
+ * The manifest entries are keyed by path and carry size and modification time, so a file is only hashed again
+ * if its stat data changed. Entries modified too close to the time the manifest was written are not trusted
+ * (the file could have been changed again within the timestamp resolution).
+ * The state is a compact binary file which is read at once into the lookup maps.
+ * A state recorded with different settings is ignored.
+ */
+class FilesystemSnapshot {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FilesystemSnapshot.class);
+
+  private static final int MAGIC = 0x4e534653;
+  private static final int FORMAT_VERSION = 1;
+  private static final long RACY_INTERVAL = 2000;
+
+  private final String settings;
+  private long snapshotTime;
+  private final Map<String, FileEntry> files = new HashMap<>();
+  private final Map<String, byte[]> scopeDigests = new HashMap<>();
+
+  private FilesystemSnapshot(String settings) {
+    this.settings = settings;
+  }
+
+  static FilesystemSnapshot load(File snapshotFile, String settings) {
+    FilesystemSnapshot snapshot = new FilesystemSnapshot(settings);
+    if (!snapshotFile.exists()) {
+      return snapshot;
+    }
+
+    LOG.debug("Reading filesystem snapshot from: {}", snapshotFile.getAbsolutePath());
+
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotFile.toPath()));
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+        LOG.info("Unknown filesystem snapshot format. Ignoring the snapshot.");
+        return snapshot;
+      }
+      if (!settings.equals(readString(buffer))) {
+        LOG.info("Change detection settings have changed. Ignoring the filesystem snapshot.");
+        return snapshot;
+      }
+
+      snapshot.snapshotTime = buffer.getLong();
+      int fileCount = buffer.getInt();
+      for (int i = 0; i < fileCount; i++) {
+        String path = readString(buffer);
+        long size = buffer.getLong();
+        long lastModified = buffer.getLong();
+        snapshot.files.put(path, new FileEntry(size, lastModified, readBytes(buffer)));
+      }
+      int scopeCount = buffer.getInt();
+      for (int i = 0; i < scopeCount; i++) {
+        String path = readString(buffer);
+        snapshot.scopeDigests.put(path, readBytes(buffer));
+      }
+
+    } catch (IOException | BufferUnderflowException e) {
+      LOG.warn("Failed to read filesystem snapshot (ignoring it): {}", snapshotFile.getAbsolutePath(), e);
+      return new FilesystemSnapshot(settings);
+    }
+
+    return snapshot;
+  }
+
+  void write(File snapshotFile) {
+    LOG.debug("Writing filesystem snapshot to: {}", snapshotFile.getAbsolutePath());
+
+    File tempFile = new File(snapshotFile.getAbsolutePath() + ".tmp");
+    if (!snapshotFile.getAbsoluteFile().getParentFile().isDirectory() && !snapshotFile.getAbsoluteFile().getParentFile().mkdirs()) {
+      throw new NonSnapshotPluginException("Failed to create directory for the filesystem snapshot: " + snapshotFile.getAbsolutePath());
+    }
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 65536))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      writeString(out, this.settings);
+      out.writeLong(System.currentTimeMillis());
+      out.writeInt(this.files.size());
+      for (Map.Entry<String, FileEntry> file : this.files.entrySet()) {
+        writeString(out, file.getKey());
+        out.writeLong(file.getValue().getSize());
+        out.writeLong(file.getValue().getLastModified());
+        writeBytes(out, file.getValue().getHash());
+      }
+      out.writeInt(this.scopeDigests.size());
+      for (Map.Entry<String, byte[]> scopeDigest : this.scopeDigests.entrySet()) {
+        writeString(out, scopeDigest.getKey());
+        writeBytes(out, scopeDigest.getValue());
+      }
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to write filesystem snapshot file!", e);
+    }
+
+    try {
+      Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to write filesystem snapshot file!", e);
+    }
+  }
+
+  /**
+   * Get the recorded hash of given file if its size and modification time are unchanged.
+   *
+   * @return byte[] or null
+   */
+  byte[] getUnchangedHash(String path, long size, long lastModified) {
+    FileEntry entry = this.files.get(path);
+    if (entry == null || entry.getSize() != size || entry.getLastModified() != lastModified
+        || lastModified >= this.snapshotTime - RACY_INTERVAL) {
+      return null;
+    }
+    return entry.getHash();
+  }
+
+  void setFiles(Map<String, FileEntry> files) {
+    this.files.clear();
+    this.files.putAll(files);
+  }
+
+  byte[] getScopeDigest(String scopePath) {
+    return this.scopeDigests.get(scopePath);
+  }
+
+  void setScopeDigest(String scopePath, byte[] digest) {
+    this.scopeDigests.put(scopePath, digest);
+  }
+
+  boolean hasScope(String scopePath) {
+    return this.scopeDigests.containsKey(scopePath);
+  }
+
+  Iterable<String> getScopePaths() {
+    return this.scopeDigests.keySet();
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    return new String(readBytes(buffer), StandardCharsets.UTF_8);
+  }
+
+  private static byte[] readBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static class FileEntry {
+
+    private final long size;
+    private final long lastModified;
+    private final byte[] hash;
+
+    FileEntry(long size, long lastModified, byte[] hash) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.hash = hash;
+    }
+
+    long getSize() {
+      return size;
+    }
+
+    long getLastModified() {
+      return lastModified;
+    }
+
+    byte[] getHash() {
+      return hash;
+    }
+  }
+}
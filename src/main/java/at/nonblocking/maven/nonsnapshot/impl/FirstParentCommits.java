@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import org.eclipse.jgit.errors.RevWalkException;
+import org.eclipse.jgit.errors.StopWalkException;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The first parent chain from a start commit (like git log --first-parent).
+ * <br/>
+ * The commits are parsed with given walk and pass its {@link RevFilter} (which may stop the iteration),
+ * so the filter based classification works the same way as for a regular walk.
+ * The chain ends at the root commit or before the (optional) end commit.
+ */
+class FirstParentCommits implements Iterable<RevCommit> {
+
+  private final RevWalk walk;
+  private final RevCommit start;
+  private final RevCommit end;
+
+  FirstParentCommits(RevWalk walk, RevCommit start, RevCommit end) {
+    this.walk = walk;
+    this.start = start;
+    this.end = end;
+  }
+
+  @Override
+  public Iterator<RevCommit> iterator() {
+    final RevFilter filter = this.walk.getRevFilter();
+
+    return new Iterator<RevCommit>() {
+      private RevCommit candidate = start;
+      private RevCommit next = findNext();
+
+      @Override
+      public boolean hasNext() {
+        return this.next != null;
+      }
+
+      @Override
+      public RevCommit next() {
+        if (this.next == null) {
+          throw new NoSuchElementException();
+        }
+        RevCommit commit = this.next;
+        this.next = findNext();
+        return commit;
+      }
+
+      private RevCommit findNext() {
+        try {
+          while (this.candidate != null && !this.candidate.equals(end)) {
+            RevCommit commit = this.candidate;
+            walk.parseHeaders(commit);
+            this.candidate = commit.getParentCount() > 0 ? commit.getParent(0) : null;
+
+            if (filter.requiresCommitBody()) {
+              walk.parseBody(commit);
+            }
+            boolean include = filter.include(walk, commit);
+            if (!walk.isRetainBody()) {
+              commit.disposeBody();
+            }
+            if (include) {
+              return commit;
+            }
+          }
+        } catch (StopWalkException e) {
+          this.candidate = null;
+        } catch (IOException e) {
+          throw new RevWalkException(e);
+        }
+        return null;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
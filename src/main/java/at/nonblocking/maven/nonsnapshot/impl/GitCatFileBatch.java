@@ -0,0 +1,163 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A long-lived git cat-file --batch process, which answers the object lookups of a handler one after the other.
+ * <br/>
+ * Each request is a single line (an object name like &lt;commit&gt;:&lt;path&gt;), the answer is read completely
+ * before the next request is written, so neither side ever blocks on a full pipe.
+ */
+class GitCatFileBatch implements Closeable {
+
+  static final String TYPE_TREE = "tree";
+
+  private static final int OBJECT_ID_LENGTH = 20;
+  private static final String MODE_TREE = "40000";
+
+  private final GitProcess process;
+
+  GitCatFileBatch(GitProcess process) {
+    this.process = process;
+  }
+
+  /**
+   * Read the object with given name.
+   *
+   * @return GitObject or null if there is no such object
+   */
+  synchronized GitObject read(String objectName) throws IOException {
+    this.process.writeLine(objectName);
+
+    String header = this.process.readUntil('\n');
+    if (header == null) {
+      throw new IOException("Unexpected end of git cat-file output");
+    }
+    String[] fields = header.split(" ");
+    if (fields.length != 3) {
+      // <object name> missing (or ambiguous)
+      return null;
+    }
+
+    byte[] content = this.process.readBytes(Integer.parseInt(fields[2]));
+    this.process.readBytes(1);
+    return new GitObject(fields[0], fields[1], content);
+  }
+
+  /**
+   * Read the entries of the tree with given name.
+   *
+   * @return Map name -&gt; TreeEntry or null if there is no such tree
+   */
+  Map<String, TreeEntry> readTree(String objectName) throws IOException {
+    GitObject tree = read(objectName);
+    if (tree == null || !TYPE_TREE.equals(tree.getType())) {
+      return null;
+    }
+
+    Map<String, TreeEntry> entries = new LinkedHashMap<>();
+    byte[] content = tree.getContent();
+    int position = 0;
+    while (position < content.length) {
+      int modeEnd = indexOf(content, (byte) ' ', position);
+      int nameEnd = indexOf(content, (byte) 0, modeEnd + 1);
+      if (modeEnd == -1 || nameEnd == -1 || nameEnd + OBJECT_ID_LENGTH >= content.length) {
+        throw new IOException("Invalid tree object: " + tree.getId());
+      }
+      String mode = new String(content, position, modeEnd - position, StandardCharsets.US_ASCII);
+      String name = new String(content, modeEnd + 1, nameEnd - modeEnd - 1, StandardCharsets.UTF_8);
+      StringBuilder id = new StringBuilder(OBJECT_ID_LENGTH * 2);
+      for (int i = nameEnd + 1; i <= nameEnd + OBJECT_ID_LENGTH; i++) {
+        id.append(Character.forDigit((content[i] >> 4) & 0xf, 16)).append(Character.forDigit(content[i] & 0xf, 16));
+      }
+      entries.put(name, new TreeEntry(mode, id.toString()));
+      position = nameEnd + 1 + OBJECT_ID_LENGTH;
+    }
+    return entries;
+  }
+
+  private static int indexOf(byte[] buffer, byte value, int start) {
+    for (int i = start; i < buffer.length; i++) {
+      if (buffer[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public void close() {
+    this.process.close();
+  }
+
+  static class GitObject {
+
+    private final String id;
+    private final String type;
+    private final byte[] content;
+
+    GitObject(String id, String type, byte[] content) {
+      this.id = id;
+      this.type = type;
+      this.content = content;
+    }
+
+    String getId() {
+      return id;
+    }
+
+    String getType() {
+      return type;
+    }
+
+    byte[] getContent() {
+      return content;
+    }
+  }
+
+  static class TreeEntry {
+
+    private final String mode;
+    private final String id;
+
+    TreeEntry(String mode, String id) {
+      this.mode = mode;
+      this.id = id;
+    }
+
+    String getMode() {
+      return mode;
+    }
+
+    String getId() {
+      return id;
+    }
+
+    boolean isTree() {
+      return MODE_TREE.equals(this.mode);
+    }
+
+    boolean sameAs(TreeEntry other) {
+      return other != null && this.mode.equals(other.mode) && this.id.equals(other.id);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Persistent change detection state of the GIT handler.
+ * <br/>
+ * Records the HEAD commit of the last run and the last commit which touched each module scope,
+ * so the next run only has to walk the commits between the recorded HEAD and the current one.
+ * A state recorded with different change detection settings is ignored.
+ */
+class GitChangeState {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitChangeState.class);
+
+  private static final String HEAD_KEY = "head";
+  private static final String SETTINGS_KEY = "settings";
+  private static final String SCOPE_KEY_PREFIX = "scope.";
+  private static final String CHANGED = "changed";
+  private static final String UNCHANGED = "unchanged";
+
+  private final String settings;
+  private ObjectId head;
+  private final Map<String, Entry> entries = new HashMap<>();
+
+  private GitChangeState(String settings) {
+    this.settings = settings;
+  }
+
+  static GitChangeState load(File stateFile, String settings) {
+    GitChangeState state = new GitChangeState(settings);
+    if (!stateFile.exists()) {
+      return state;
+    }
+
+    LOG.debug("Reading change detection state from: {}", stateFile.getAbsolutePath());
+
+    Properties properties = new Properties();
+    try (InputStream inputStream = new FileInputStream(stateFile)) {
+      properties.load(inputStream);
+
+      if (!settings.equals(properties.getProperty(SETTINGS_KEY))) {
+        LOG.info("Change detection settings have changed. Ignoring the change detection state.");
+        return state;
+      }
+
+      String head = properties.getProperty(HEAD_KEY);
+      if (head == null || !ObjectId.isId(head)) {
+        return state;
+      }
+      state.head = ObjectId.fromString(head);
+
+      for (String key : properties.stringPropertyNames()) {
+        if (key.startsWith(SCOPE_KEY_PREFIX)) {
+          String[] value = properties.getProperty(key).split(" ");
+          if (value.length == 2 && ObjectId.isId(value[0])) {
+            state.entries.put(key.substring(SCOPE_KEY_PREFIX.length()), new Entry(ObjectId.fromString(value[0]), CHANGED.equals(value[1])));
+          }
+        }
+      }
+
+    } catch (IOException | IllegalArgumentException e) {
+      LOG.warn("Failed to read change detection state (ignoring it): {}", stateFile.getAbsolutePath(), e);
+      return new GitChangeState(settings);
+    }
+
+    return state;
+  }
+
+  void write(File stateFile) {
+    LOG.debug("Writing change detection state to: {}", stateFile.getAbsolutePath());
+
+    Properties properties = new Properties();
+    properties.setProperty(SETTINGS_KEY, this.settings);
+    properties.setProperty(HEAD_KEY, this.head.name());
+    for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+      properties.setProperty(SCOPE_KEY_PREFIX + entry.getKey(),
+          entry.getValue().getCommitId().name() + " " + (entry.getValue().isChanged() ? CHANGED : UNCHANGED));
+    }
+
+    try (OutputStream outputStream = new FileOutputStream(stateFile, false)) {
+      properties.store(outputStream, "Change detection state generated by nonsnapshot-maven-plugin");
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to write change detection state file!", e);
+    }
+  }
+
+  ObjectId getHead() {
+    return head;
+  }
+
+  Entry getEntry(String scopePath) {
+    return this.entries.get(scopePath);
+  }
+
+  void update(ObjectId head, Map<String, Entry> lastChanges) {
+    this.head = head;
+    this.entries.putAll(lastChanges);
+  }
+
+  /**
+   * The last commit which touched a module scope.
+   */
+  static class Entry {
+
+    private final ObjectId commitId;
+    private final boolean changed;
+
+    Entry(ObjectId commitId, boolean changed) {
+      this.commitId = commitId;
+      this.changed = changed;
+    }
+
+    /**
+     * The last commit touching the module or the zero id if no such commit exists
+     */
+    ObjectId getCommitId() {
+      return commitId;
+    }
+
+    /**
+     * True if the last commit was not a version update of this plugin
+     */
+    boolean isChanged() {
+      return changed;
+    }
+  }
+}
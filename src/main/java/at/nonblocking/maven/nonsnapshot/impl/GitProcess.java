@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A running native git command in a repository, whose output is read as a stream.
+ * <br/>
+ * The output can be read in records up to a delimiter byte, so large outputs are processed while git is still running.
+ * Closing the process before its output has been read completely (e.g. when the result is already known) kills it.
+ */
+class GitProcess implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(GitProcess.class);
+
+  private final List<String> command;
+  private final Process process;
+  private final File errorFile;
+  private final InputStream output;
+  private final OutputStream input;
+  private Thread inputWriter;
+  private volatile IOException inputError;
+
+  GitProcess(String gitExecutable, File workDir, List<String> arguments) throws IOException {
+    this.command = new ArrayList<>();
+    this.command.add(gitExecutable);
+    this.command.addAll(arguments);
+    LOG.debug("Git: Running {}", this.command);
+
+    this.errorFile = File.createTempFile("nonsnapshot-git", ".err");
+    this.process = new ProcessBuilder(this.command)
+        .directory(workDir)
+        .redirectError(this.errorFile)
+        .start();
+    this.output = new BufferedInputStream(this.process.getInputStream(), 65536);
+    this.input = new BufferedOutputStream(this.process.getOutputStream());
+  }
+
+  /**
+   * Write given lines to the standard input of the process and close it.
+   * <br/>
+   * The lines are written by a separate thread, so git never blocks on a full output pipe while the input is written.
+   */
+  void writeLines(final Iterable<String> lines) {
+    this.inputWriter = new Thread(() -> {
+      try {
+        for (String line : lines) {
+          this.input.write(line.getBytes(StandardCharsets.UTF_8));
+          this.input.write('\n');
+        }
+        this.input.close();
+      } catch (IOException e) {
+        this.inputError = e;
+      }
+    }, "nonsnapshot-git-input");
+    this.inputWriter.setDaemon(true);
+    this.inputWriter.start();
+  }
+
+  /**
+   * Write a single line to the standard input of the process, without closing it.
+   * Used for request/response commands like git cat-file --batch, where each answer is read before the next request.
+   */
+  void writeLine(String line) throws IOException {
+    this.input.write(line.getBytes(StandardCharsets.UTF_8));
+    this.input.write('\n');
+    this.input.flush();
+  }
+
+  /**
+   * Read exactly given number of bytes from the output.
+   */
+  byte[] readBytes(int length) throws IOException {
+    byte[] bytes = new byte[length];
+    int offset = 0;
+    while (offset < length) {
+      int read = this.output.read(bytes, offset, length - offset);
+      if (read == -1) {
+        throw new IOException("Unexpected end of the output of " + this.command);
+      }
+      offset += read;
+    }
+    return bytes;
+  }
+
+  /**
+   * Read the output up to (and excluding) given delimiter.
+   *
+   * @return String or null at the end of the output
+   */
+  String readUntil(int delimiter) throws IOException {
+    ByteArrayOutputStream record = new ByteArrayOutputStream();
+    int b;
+    while ((b = this.output.read()) != -1 && b != delimiter) {
+      record.write(b);
+    }
+    if (b == -1 && record.size() == 0) {
+      return null;
+    }
+    return new String(record.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Wait for the process and fail if it didn't exit successfully.
+   */
+  void waitForSuccess() throws IOException {
+    try {
+      int exitCode = this.process.waitFor();
+      if (this.inputWriter != null) {
+        this.inputWriter.join();
+      }
+      if (exitCode != 0) {
+        String error = new String(Files.readAllBytes(this.errorFile.toPath()), StandardCharsets.UTF_8).trim();
+        throw new IOException("Command " + this.command + " failed with exit code " + exitCode + ": " + error);
+      }
+      if (this.inputError != null) {
+        throw this.inputError;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for " + this.command, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    this.process.destroy();
+    if (!this.errorFile.delete()) {
+      this.errorFile.deleteOnExit();
+    }
+  }
+}
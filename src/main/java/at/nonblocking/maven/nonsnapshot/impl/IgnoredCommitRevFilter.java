@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+
+/**
+ * Includes all commits and marks the ones of an ignored author or committer with given flag.
+ */
+class IgnoredCommitRevFilter extends RevFilter {
+
+  private final ChangeRelevance changeRelevance;
+  private final RevFlag ignoredFlag;
+
+  IgnoredCommitRevFilter(ChangeRelevance changeRelevance, RevFlag ignoredFlag) {
+    this.changeRelevance = changeRelevance;
+    this.ignoredFlag = ignoredFlag;
+  }
+
+  @Override
+  public boolean include(RevWalk walker, RevCommit commit) {
+    if (this.changeRelevance.isIgnoredCommit(commit)) {
+      commit.add(this.ignoredFlag);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean requiresCommitBody() {
+    return true;
+  }
+
+  @Override
+  public RevFilter clone() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "IGNORED_COMMIT";
+  }
+}
@@ -22,19 +22,25 @@ import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 import at.nonblocking.maven.nonsnapshot.model.MavenModuleDependency;
 import at.nonblocking.maven.nonsnapshot.model.UpdatedUpstreamMavenArtifact;
 import org.apache.maven.model.*;
-import org.apache.maven.model.io.xpp3.MavenXpp3ReaderEx;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.util.IOUtil;
-import org.codehaus.plexus.util.ReaderFactory;
-import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.codehaus.plexus.util.xml.XmlStreamReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Default implementation of {@link MavenPomHandler}
@@ -48,21 +54,20 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
 
   private static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
-  @Override
-  public MavenModule readArtifact(File pomFile) {
-    LOG.debug("Loading POM file: {}", pomFile.getAbsolutePath());
+  private static final Pattern VERSION_TAG = Pattern.compile("<version>.*?</version>");
+  private static final Pattern VERSION_START_TAG = Pattern.compile("<version\\s*>");
 
-    InputSource is = new InputSource();
-    MavenXpp3ReaderEx reader = new MavenXpp3ReaderEx();
+  private final PomCache pomCache = new PomCache();
 
-    try {
-      Model model = reader.read(ReaderFactory.newXmlReader(pomFile), false, is);
-      model.setPomFile(pomFile);
-      return readArtifact(model);
+  @Override
+  public Model readModel(File pomFile) {
+    return this.pomCache.getModel(pomFile);
+  }
 
-    } catch (IOException | XmlPullParserException e) {
-      throw new NonSnapshotPluginException("Failed to load POM: " + pomFile.getAbsolutePath(), e);
-    }
+  @Override
+  public MavenModule readArtifact(File pomFile) {
+    LOG.debug("Loading POM file: {}", pomFile.getAbsolutePath());
+    return readArtifact(this.pomCache.getModel(pomFile));
   }
 
   @Override
@@ -92,36 +97,28 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
     MavenModule mavenModule = new MavenModule(pomFile, groupId, model.getArtifactId(), version);
     mavenModule.setInsertVersionTag(insertVersionTag);
     mavenModule.setVersionLocation(getVersionLocation(model));
+    mavenModule.setVersionColumn(getVersionColumn(model));
 
     // Parent
     Parent parent = model.getParent();
     if (parent != null) {
       mavenModule.setParent(new MavenArtifact(parent.getGroupId(), parent.getArtifactId(), "pom", parent.getVersion()));
       mavenModule.setParentVersionLocation(getVersionLocation(model.getParent()));
+      mavenModule.setParentVersionColumn(getVersionColumn(model.getParent()));
     }
 
     // Dependencies
     for (Dependency dependency : model.getDependencies()) {
-      mavenModule.getDependencies().add(new MavenModuleDependency(
-          getVersionLocation(dependency),
-          new MavenArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getType(), dependency.getVersion()),
-          dependency.getScope())
-      );
+      mavenModule.getDependencies().add(createModuleDependency(dependency));
     }
 
     // Plugins
     if (model.getBuild() != null) {
       for (Plugin plugin : model.getBuild().getPlugins()) {
-        mavenModule.getDependencies().add(new MavenModuleDependency(
-            getVersionLocation(plugin),
-            new MavenArtifact(plugin.getGroupId(), plugin.getArtifactId(), plugin.getVersion())));
+        mavenModule.getDependencies().add(createModuleDependency(plugin));
 
         for (Dependency dependency : plugin.getDependencies()) {
-          mavenModule.getDependencies().add(new MavenModuleDependency(
-              getVersionLocation(dependency),
-              new MavenArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getType(), dependency.getVersion()),
-              dependency.getScope())
-          );
+          mavenModule.getDependencies().add(createModuleDependency(dependency));
         }
       }
     }
@@ -129,11 +126,7 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
     // Profile Dependencies
     for (Profile profile : model.getProfiles()) {
       for (Dependency dependency : profile.getDependencies()) {
-        mavenModule.getDependencies().add(new MavenModuleDependency(
-            getVersionLocation(dependency),
-            new MavenArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getType(), dependency.getVersion()),
-            dependency.getScope())
-        );
+        mavenModule.getDependencies().add(createModuleDependency(dependency));
       }
     }
 
@@ -141,17 +134,10 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
     for (Profile profile : model.getProfiles()) {
       if (profile.getBuild() != null) {
         for (Plugin plugin : profile.getBuild().getPlugins()) {
-          mavenModule.getDependencies().add(new MavenModuleDependency(
-              getVersionLocation(plugin),
-              new MavenArtifact(plugin.getGroupId(), plugin.getArtifactId(), plugin.getVersion())));
-
+          mavenModule.getDependencies().add(createModuleDependency(plugin));
 
           for (Dependency dependency : plugin.getDependencies()) {
-            mavenModule.getDependencies().add(new MavenModuleDependency(
-                getVersionLocation(dependency),
-                new MavenArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getType(), dependency.getVersion()),
-                dependency.getScope())
-            );
+            mavenModule.getDependencies().add(createModuleDependency(dependency));
           }
         }
       }
@@ -163,11 +149,7 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
     if(dependencyManagement != null) {
       LOG.info("Dependency management section found in {}:{} - processing", model.getGroupId(), model.getArtifactId());
       for (Dependency dependency : dependencyManagement.getDependencies()) {
-        mavenModule.getDependencies().add(new MavenModuleDependency(
-          getVersionLocation(dependency),
-          new MavenArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getType(), dependency.getVersion()),
-          dependency.getScope())
-        );
+        mavenModule.getDependencies().add(createModuleDependency(dependency));
         LOG.info(
           "Dependency {}:{}:{}:{} (scope: {}) found in dependency management section and added",
           dependency.getGroupId(), dependency.getArtifactId(), dependency.getType(), dependency.getVersion(), dependency.getScope());
@@ -179,6 +161,23 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
     return mavenModule;
   }
 
+  private MavenModuleDependency createModuleDependency(Dependency dependency) {
+    MavenModuleDependency moduleDependency = new MavenModuleDependency(
+        getVersionLocation(dependency),
+        new MavenArtifact(dependency.getGroupId(), dependency.getArtifactId(), dependency.getType(), dependency.getVersion()),
+        dependency.getScope());
+    moduleDependency.setVersionColumn(getVersionColumn(dependency));
+    return moduleDependency;
+  }
+
+  private MavenModuleDependency createModuleDependency(Plugin plugin) {
+    MavenModuleDependency moduleDependency = new MavenModuleDependency(
+        getVersionLocation(plugin),
+        new MavenArtifact(plugin.getGroupId(), plugin.getArtifactId(), plugin.getVersion()));
+    moduleDependency.setVersionColumn(getVersionColumn(plugin));
+    return moduleDependency;
+  }
+
   private int getVersionLocation(InputLocationTracker tracker) {
     InputLocation location = tracker.getLocation("version");
     if (location == null) {
@@ -188,36 +187,49 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
     return location.getLineNumber();
   }
 
+  private int getVersionColumn(InputLocationTracker tracker) {
+    InputLocation location = tracker.getLocation("version");
+    return location != null ? location.getColumnNumber() : -1;
+  }
+
   @Override
   public void updateArtifact(MavenModule mavenModule) {
+    byte[] newContent = renderArtifact(mavenModule);
+    if (newContent != null) {
+      writePom(mavenModule.getPomFile(), newContent);
+    }
+  }
+
+  @Override
+  public byte[] renderArtifact(MavenModule mavenModule) {
     if (!mavenModule.isDirty()) {
-      return;
+      return null;
     }
 
     List<PomUpdateCommand> commands = new ArrayList<>();
 
-    addUpdateCommand(mavenModule, mavenModule.getVersionLocation(), false, commands);
+    addUpdateCommand(mavenModule, mavenModule.getVersionLocation(), mavenModule.getVersionColumn(), false, commands);
 
     if (mavenModule.getParent() != null) {
       if (mavenModule.getParent() instanceof MavenModule) {
-        addUpdateCommand((MavenModule) mavenModule.getParent(), mavenModule.getParentVersionLocation(), true, commands);
+        addUpdateCommand((MavenModule) mavenModule.getParent(), mavenModule.getParentVersionLocation(), mavenModule.getParentVersionColumn(), true, commands);
       } else if (mavenModule.getParent() instanceof UpdatedUpstreamMavenArtifact) {
-        addUpdateCommand((UpdatedUpstreamMavenArtifact) mavenModule.getParent(), mavenModule.getParentVersionLocation(), commands);
+        addUpdateCommand((UpdatedUpstreamMavenArtifact) mavenModule.getParent(), mavenModule.getParentVersionLocation(), mavenModule.getParentVersionColumn(), commands);
       }
     }
 
     for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
       if (dependency.getArtifact() instanceof MavenModule) {
-        addUpdateCommand((MavenModule) dependency.getArtifact(), dependency.getVersionLocation(), true, commands);
+        addUpdateCommand((MavenModule) dependency.getArtifact(), dependency.getVersionLocation(), dependency.getVersionColumn(), true, commands);
       } else if (dependency.getArtifact() instanceof UpdatedUpstreamMavenArtifact) {
-        addUpdateCommand((UpdatedUpstreamMavenArtifact) dependency.getArtifact(), dependency.getVersionLocation(), commands);
+        addUpdateCommand((UpdatedUpstreamMavenArtifact) dependency.getArtifact(), dependency.getVersionLocation(), dependency.getVersionColumn(), commands);
       }
     }
 
-    executeUpdateCommands(commands, mavenModule.getPomFile());
+    return executeUpdateCommands(commands, mavenModule.getPomFile());
   }
 
-  private void addUpdateCommand(MavenModule mavenModule, Integer lineNumber, boolean dependency, List<PomUpdateCommand> commands) {
+  private void addUpdateCommand(MavenModule mavenModule, int lineNumber, int valueColumn, boolean dependency, List<PomUpdateCommand> commands) {
     if (!mavenModule.isDirty()) {
       return;
     }
@@ -227,63 +239,179 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
     }
 
     if (!dependency && mavenModule.isInsertVersionTag()) {
-      commands.add(new PomUpdateCommand(lineNumber, UPDATE_COMMAND_TYPE.INSERT, "<version>" + mavenModule.getNewVersion() + "</version>", null));
+      commands.add(new PomUpdateCommand(lineNumber, -1, UPDATE_COMMAND_TYPE.INSERT, mavenModule.getNewVersion()));
     } else {
-      commands.add(new PomUpdateCommand(lineNumber, UPDATE_COMMAND_TYPE.REPLACE, "<version>.*?</version>", "<version>" + mavenModule.getNewVersion() + "</version>"));
+      commands.add(new PomUpdateCommand(lineNumber, valueColumn, UPDATE_COMMAND_TYPE.REPLACE, mavenModule.getNewVersion()));
     }
   }
 
-  private void addUpdateCommand(UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifact, Integer lineNumber, List<PomUpdateCommand> commands) {
-    commands.add(new PomUpdateCommand(lineNumber, UPDATE_COMMAND_TYPE.REPLACE, "<version>.*?</version>", "<version>" + updatedUpstreamMavenArtifact.getNewVersion() + "</version>"));
+  private void addUpdateCommand(UpdatedUpstreamMavenArtifact updatedUpstreamMavenArtifact, int lineNumber, int valueColumn, List<PomUpdateCommand> commands) {
+    commands.add(new PomUpdateCommand(lineNumber, valueColumn, UPDATE_COMMAND_TYPE.REPLACE, updatedUpstreamMavenArtifact.getNewVersion()));
   }
 
-  private void executeUpdateCommands(List<PomUpdateCommand> commands, File pomFile) {
-    Map<Integer, PomUpdateCommand> commandMap = new HashMap<>();
-
-    for (PomUpdateCommand command : commands) {
-      commandMap.put(command.lineNumber, command);
-    }
-
+  /**
+   * Splice the new versions into the POM content.
+   * <br/>
+   * The file is decoded like the {@link PomScanner} did, so the version values are found at their recorded line and column.
+   * Commands without a (valid) column replace the versions on their line. Everything else is kept byte by byte.
+   *
+   * @return the new file content or null if it doesn't change
+   */
+  private byte[] executeUpdateCommands(List<PomUpdateCommand> commands, File pomFile) {
     try {
-      LineNumberReader reader = new LineNumberReader(new FileReader(pomFile));
-      File tempTarget = File.createTempFile("pom", ".xml");
-      PrintWriter writer = new PrintWriter(tempTarget);
+      byte[] content = Files.readAllBytes(pomFile.toPath());
+      String text;
+      Charset charset;
+      try (XmlStreamReader reader = new XmlStreamReader(new ByteArrayInputStream(content))) {
+        charset = Charset.forName(reader.getEncoding());
+        text = IOUtil.toString(reader);
+      }
+
+      byte[] encodedText = text.getBytes(charset);
+      int bomLength = content.length - encodedText.length;
+      if (bomLength < 0 || !Arrays.equals(encodedText, Arrays.copyOfRange(content, bomLength, content.length))) {
+        throw new NonSnapshotPluginException("Failed to updated POM file: " + pomFile.getAbsolutePath()
+            + " (content is not valid " + charset.name() + ")");
+      }
 
-      LOG.debug("Writing temporary POM file to: {}", tempTarget.getAbsoluteFile());
+      List<int[]> lines = findLines(text);
+      TreeMap<Integer, PomEdit> edits = new TreeMap<>();
+      for (PomUpdateCommand command : commands) {
+        addEdits(text, lines, command, edits);
+      }
 
-      String line;
-      while ((line = reader.readLine()) != null) {
-        PomUpdateCommand command = commandMap.get(reader.getLineNumber());
-        if (command != null) {
-          line = executeCommand(line, command);
+      StringBuilder newText = new StringBuilder(text.length() + 64);
+      int position = 0;
+      for (Map.Entry<Integer, PomEdit> edit : edits.entrySet()) {
+        if (edit.getKey() < position) {
+          continue;
         }
+        newText.append(text, position, edit.getKey()).append(edit.getValue().replacement);
+        position = edit.getValue().end;
+      }
+      newText.append(text, position, text.length());
 
-        writer.write(line + LINE_SEPARATOR);
+      byte[] newContent = newText.toString().getBytes(charset);
+      if (Arrays.equals(newContent, encodedText)) {
+        LOG.debug("POM file unchanged: {}", pomFile.getAbsoluteFile());
+        return null;
       }
 
-      reader.close();
-      writer.close();
+      byte[] newFileContent = new byte[bomLength + newContent.length];
+      System.arraycopy(content, 0, newFileContent, 0, bomLength);
+      System.arraycopy(newContent, 0, newFileContent, bomLength, newContent.length);
+      return newFileContent;
+
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to updated POM file: " + pomFile.getAbsolutePath(), e);
+    }
+  }
 
-      LOG.debug("Copy temporary POM file to: {}", pomFile.getAbsoluteFile());
-      IOUtil.copy(new FileReader(tempTarget), new FileOutputStream(pomFile));
-      tempTarget.delete();
+  /**
+   * Write the content to a temporary file in the same directory and move it over the POM file with a single atomic move.
+   */
+  @Override
+  public void writePom(File pomFile, byte[] content) {
+    try {
+      Path tempTarget = Files.createTempFile(pomFile.getAbsoluteFile().getParentFile().toPath(), ".pom", ".tmp");
+      try {
+        LOG.debug("Writing temporary POM file to: {}", tempTarget);
+        Files.write(tempTarget, content);
+        copyPermissions(pomFile.toPath(), tempTarget);
+
+        LOG.debug("Move temporary POM file to: {}", pomFile.getAbsoluteFile());
+        try {
+          Files.move(tempTarget, pomFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tempTarget, pomFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+      } finally {
+        Files.deleteIfExists(tempTarget);
+      }
+      this.pomCache.invalidate(pomFile);
 
     } catch (IOException e) {
       throw new NonSnapshotPluginException("Failed to updated POM file: " + pomFile.getAbsolutePath(), e);
     }
   }
 
-  private String executeCommand(String line, PomUpdateCommand command) {
-    switch (command.commandType) {
-      case REPLACE:
-        LOG.debug("Replacing '{}' with '{}' in line number: {}", new Object[]{command.text1, command.text2, command.lineNumber});
-        return line.replaceAll(command.text1, command.text2);
-      case INSERT:
-        LOG.debug("Inserting '{}' in line number: {}", new Object[]{command.text1, command.lineNumber});
-        return line + LINE_SEPARATOR + command.text1;
+  private void addEdits(String text, List<int[]> lines, PomUpdateCommand command, Map<Integer, PomEdit> edits) {
+    if (command.lineNumber < 1 || command.lineNumber > lines.size()) {
+      LOG.warn("Invalid line number {} in POM file. Cannot update version {}!", command.lineNumber, command.newVersion);
+      return;
+    }
+
+    int[] line = lines.get(command.lineNumber - 1);
+    String versionTag = "<version>" + command.newVersion + "</version>";
+
+    if (command.commandType == UPDATE_COMMAND_TYPE.INSERT) {
+      String lineSeparator = line[2] > line[1] ? text.substring(line[1], line[2]) : LINE_SEPARATOR;
+      LOG.debug("Inserting '{}' in line number: {}", versionTag, command.lineNumber);
+      edits.put(line[1], new PomEdit(line[1], lineSeparator + versionTag));
+      return;
+    }
+
+    int valueOffset = command.valueColumn > 0 ? line[0] + command.valueColumn - 1 : -1;
+    int valueEnd = findVersionValueEnd(text, valueOffset);
+    if (valueEnd != -1) {
+      LOG.debug("Replacing '{}' with '{}' in line number: {}", new Object[]{text.substring(valueOffset, valueEnd), command.newVersion, command.lineNumber});
+      edits.put(valueOffset, new PomEdit(valueEnd, command.newVersion));
+      return;
+    }
+
+    Matcher matcher = VERSION_TAG.matcher(text).region(line[0], line[1]);
+    while (matcher.find()) {
+      LOG.debug("Replacing '{}' with '{}' in line number: {}", new Object[]{matcher.group(), versionTag, command.lineNumber});
+      edits.put(matcher.start(), new PomEdit(matcher.end(), versionTag));
+    }
+  }
+
+  /**
+   * Check that the given offset is the start of a version value and return its end.
+   *
+   * @return the offset of the version end tag or -1
+   */
+  private static int findVersionValueEnd(String text, int valueOffset) {
+    if (valueOffset < 1 || valueOffset > text.length() || text.charAt(valueOffset - 1) != '>') {
+      return -1;
+    }
+    int tagStart = text.lastIndexOf('<', valueOffset - 1);
+    if (tagStart == -1 || !VERSION_START_TAG.matcher(text.substring(tagStart, valueOffset)).matches()) {
+      return -1;
     }
+    int valueEnd = text.indexOf('<', valueOffset);
+    if (valueEnd == -1 || !text.startsWith("</version", valueEnd)) {
+      return -1;
+    }
+    return valueEnd;
+  }
 
-    return line;
+  /**
+   * The lines of given text as {start, end, end including the line terminator}. Like XML parsers
+   * \r\n, \r and \n terminate a line.
+   */
+  private static List<int[]> findLines(String text) {
+    List<int[]> lines = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '\n' || c == '\r') {
+        int end = c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n' ? i + 2 : i + 1;
+        lines.add(new int[]{start, i, end});
+        start = end;
+        i = end - 1;
+      }
+    }
+    lines.add(new int[]{start, text.length(), text.length()});
+    return lines;
+  }
+
+  private static void copyPermissions(Path source, Path target) {
+    try {
+      Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(source));
+    } catch (UnsupportedOperationException | IOException e) {
+      LOG.debug("Failed to copy the permissions of {}: {}", source, e.getMessage());
+    }
   }
 
   private enum UPDATE_COMMAND_TYPE {
@@ -293,15 +421,27 @@ public class MavenPomHandlerDefaultImpl implements MavenPomHandler {
   private static class PomUpdateCommand {
 
     int lineNumber;
+    int valueColumn;
     UPDATE_COMMAND_TYPE commandType;
-    String text1;
-    String text2;
+    String newVersion;
 
-    public PomUpdateCommand(int lineNumber, UPDATE_COMMAND_TYPE commandType, String text1, String text2) {
+    public PomUpdateCommand(int lineNumber, int valueColumn, UPDATE_COMMAND_TYPE commandType, String newVersion) {
       this.lineNumber = lineNumber;
+      this.valueColumn = valueColumn;
       this.commandType = commandType;
-      this.text1 = text1;
-      this.text2 = text2;
+      this.newVersion = newVersion;
+    }
+
+  }
+
+  private static class PomEdit {
+
+    int end;
+    String replacement;
+
+    public PomEdit(int end, String replacement) {
+      this.end = end;
+      this.replacement = replacement;
     }
 
   }
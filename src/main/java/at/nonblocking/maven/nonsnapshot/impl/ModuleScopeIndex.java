@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import at.nonblocking.maven.nonsnapshot.PathUtil;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps repository relative paths to the module scopes (directories or single POM files) containing them.
+ * <br/>
+ * A changed path belongs to every scope which is a prefix of it, so nested modules are all resolved
+ * with O(path depth) lookups.
+ */
+class ModuleScopeIndex {
+
+  static final String ROOT_PATH = "";
+
+  private final Map<String, List<File>> scopesByPath = new LinkedHashMap<>();
+
+  ModuleScopeIndex(File baseDir, Collection<File> scopes) throws IOException {
+    for (File scope : scopes) {
+      String path = PathUtil.relativePath(baseDir, scope);
+      List<File> scopesForPath = this.scopesByPath.get(path);
+      if (scopesForPath == null) {
+        scopesForPath = new ArrayList<>(1);
+        this.scopesByPath.put(path, scopesForPath);
+      }
+      scopesForPath.add(scope);
+    }
+  }
+
+  Set<String> getPaths() {
+    return this.scopesByPath.keySet();
+  }
+
+  List<File> getScopes(String path) {
+    List<File> scopes = this.scopesByPath.get(path);
+    return scopes != null ? scopes : Collections.<File>emptyList();
+  }
+
+  /**
+   * Collect all scope paths out of the given candidates which contain the given (repository relative) path.
+   *
+   * @param changedPath String
+   * @param candidates Set<String>
+   * @param result Collection<String>
+   */
+  static void collectScopePaths(String changedPath, Set<String> candidates, Collection<String> result) {
+    if (candidates.contains(ROOT_PATH)) {
+      result.add(ROOT_PATH);
+    }
+    int separator = changedPath.indexOf('/');
+    while (separator != -1) {
+      String parentPath = changedPath.substring(0, separator);
+      if (candidates.contains(parentPath)) {
+        result.add(parentPath);
+      }
+      separator = changedPath.indexOf('/', separator + 1);
+    }
+    if (candidates.contains(changedPath)) {
+      result.add(changedPath);
+    }
+  }
+
+  /**
+   * Create a tree filter which only includes the given scope paths.
+   *
+   * @param paths Collection<String>
+   * @return TreeFilter
+   */
+  static TreeFilter createTreeFilter(Collection<String> paths) {
+    if (paths.contains(ROOT_PATH)) {
+      return TreeFilter.ALL;
+    }
+    return PathFilterGroup.createFromStrings(paths);
+  }
+}
@@ -15,23 +15,19 @@
  */
 package at.nonblocking.maven.nonsnapshot.impl;
 
+import at.nonblocking.maven.nonsnapshot.MavenPomHandler;
 import at.nonblocking.maven.nonsnapshot.ModuleTraverser;
-import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
-import org.apache.maven.model.InputSource;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.Profile;
-import org.apache.maven.model.io.xpp3.MavenXpp3ReaderEx;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.component.annotations.Component;
-import org.codehaus.plexus.util.ReaderFactory;
-import org.codehaus.plexus.util.xml.XmlStreamReader;
-import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Default implementation of a module traverser.
@@ -43,56 +39,73 @@ public class ModuleTraverserDefaultImpl implements ModuleTraverser {
 
   private static final Logger LOG = LoggerFactory.getLogger(ModuleTraverserDefaultImpl.class);
 
+  /**
+   * The POM files of sibling modules are parsed in parallel (in a fork-join pool), the models are returned in
+   * depth-first order starting with the base project, like a sequential traversal would.
+   */
   @Override
-  public List<Model> findAllModules(MavenProject baseProject, List<Profile> activeProfiles) {
+  public List<Model> findAllModules(MavenProject baseProject, List<Profile> activeProfiles, MavenPomHandler mavenPomHandler) {
     LOG.info("Scanning for Maven modules... Active profiles: {}", activeProfiles);
 
-    List<Model> modelList = new ArrayList<>();
-    recursiveFindModules(baseProject.getBasedir(), modelList, activeProfiles);
-    return modelList;
+    ForkJoinPool pool = new ForkJoinPool();
+    try {
+      return pool.invoke(new FindModulesTask(baseProject.getBasedir(), activeProfiles, mavenPomHandler));
+    } finally {
+      pool.shutdown();
+    }
   }
 
-  private void recursiveFindModules(File baseDir, List<Model> modelList, List<Profile> activeProfiles) {
-    MavenXpp3ReaderEx reader = new MavenXpp3ReaderEx();
-    File pom = new File(baseDir, "pom.xml");
+  private static List<String> getProfileModules(Model model, Profile activeProfile) {
+    for (Profile profile : model.getProfiles()) {
+      if (profile.getId().equals(activeProfile.getId())) {
+        return profile.getModules();
+      }
+    }
 
-    Model model;
+    return Collections.emptyList();
+  }
 
-    try (XmlStreamReader xmlStreamReader = ReaderFactory.newXmlReader(pom)) {
-      InputSource is = new InputSource();
-      model = reader.read(xmlStreamReader, false, is);
-      model.setPomFile(pom);
-      LOG.debug("Found maven module: {}", pom.getParentFile().getAbsolutePath());
+  private static class FindModulesTask extends RecursiveTask<List<Model>> {
 
-    } catch (IOException | XmlPullParserException e) {
-      throw new NonSnapshotPluginException("Failed to load POM: " + pom.getAbsolutePath(), e);
+    private final File baseDir;
+    private final List<Profile> activeProfiles;
+    private final MavenPomHandler mavenPomHandler;
+
+    private FindModulesTask(File baseDir, List<Profile> activeProfiles, MavenPomHandler mavenPomHandler) {
+      this.baseDir = baseDir;
+      this.activeProfiles = activeProfiles;
+      this.mavenPomHandler = mavenPomHandler;
     }
 
-    modelList.add(model);
+    @Override
+    protected List<Model> compute() {
+      File pom = new File(this.baseDir, "pom.xml");
 
-    Set<String> modulePaths = new LinkedHashSet<>();
-    modulePaths.addAll(model.getModules());
+      Model model = this.mavenPomHandler.readModel(pom);
+      LOG.debug("Found maven module: {}", pom.getParentFile().getAbsolutePath());
 
-    if (activeProfiles != null) {
-      for (Profile activeProfile : activeProfiles) {
-        modulePaths.addAll(getProfileModules(model, activeProfile));
+      Set<String> modulePaths = new LinkedHashSet<>();
+      modulePaths.addAll(model.getModules());
+
+      if (this.activeProfiles != null) {
+        for (Profile activeProfile : this.activeProfiles) {
+          modulePaths.addAll(getProfileModules(model, activeProfile));
+        }
       }
-    }
 
-    for (String modulePath : modulePaths) {
-      File moduleDir = new File(baseDir, modulePath);
-      recursiveFindModules(moduleDir, modelList, activeProfiles);
-    }
-  }
+      List<FindModulesTask> moduleTasks = new ArrayList<>();
+      for (String modulePath : modulePaths) {
+        moduleTasks.add(new FindModulesTask(new File(this.baseDir, modulePath), this.activeProfiles, this.mavenPomHandler));
+      }
+      invokeAll(moduleTasks);
 
-  private List<String> getProfileModules(Model model, Profile activeProfile) {
-    for (Profile profile : model.getProfiles()) {
-      if (profile.getId().equals(activeProfile.getId())) {
-        return profile.getModules();
+      List<Model> modelList = new ArrayList<>();
+      modelList.add(model);
+      for (FindModulesTask moduleTask : moduleTasks) {
+        modelList.addAll(moduleTask.join());
       }
+      return modelList;
     }
-
-    return Collections.emptyList();
   }
 
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import org.apache.maven.model.InputSource;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3ReaderEx;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.XmlStreamReader;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The parsed POM models by canonical path, so each POM is parsed only once. Only the models are cached: the
+ * modules derived from them are mutable (new version, dirty flag, links) and are therefore built fresh for each caller.
+ * <br/>
+ * An entry is valid as long as the size and the modification time of the file are unchanged. Files modified shortly
+ * before they were parsed (racily clean) are parsed again, since a change within the timestamp resolution would
+ * keep both.
+ */
+class PomCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PomCache.class);
+
+  private static final long RACY_INTERVAL = 2000;
+
+  private final Map<File, Entry> entries = new ConcurrentHashMap<>();
+
+  Model getModel(File pomFile) {
+    return getEntry(pomFile).model;
+  }
+
+  void invalidate(File pomFile) {
+    this.entries.remove(getKey(pomFile));
+  }
+
+  private Entry getEntry(File pomFile) {
+    File key = getKey(pomFile);
+    long size = pomFile.length();
+    long lastModified = pomFile.lastModified();
+
+    Entry entry = this.entries.get(key);
+    if (entry != null && entry.size == size && entry.lastModified == lastModified && lastModified < entry.parseTime - RACY_INTERVAL) {
+      return entry;
+    }
+
+    entry = new Entry(size, lastModified, System.currentTimeMillis(), parse(pomFile));
+    this.entries.put(key, entry);
+    return entry;
+  }
+
+  /**
+   * Scan the POM with the {@link PomScanner}. POM files it cannot read (e.g. with HTML entities, which
+   * Maven tolerates) are parsed with the full Maven reader.
+   */
+  private static Model parse(File pomFile) {
+    LOG.debug("Parsing POM file: {}", pomFile.getAbsolutePath());
+
+    try {
+      return PomScanner.scan(pomFile);
+    } catch (IOException | XMLStreamException e) {
+      LOG.debug("Failed to scan POM file {}, falling back to the Maven reader: {}", pomFile.getAbsolutePath(), e.getMessage());
+    }
+
+    try (XmlStreamReader xmlStreamReader = ReaderFactory.newXmlReader(pomFile)) {
+      Model model = new MavenXpp3ReaderEx().read(xmlStreamReader, false, new InputSource());
+      model.setPomFile(pomFile);
+      return model;
+
+    } catch (IOException | XmlPullParserException e) {
+      throw new NonSnapshotPluginException("Failed to load POM: " + pomFile.getAbsolutePath(), e);
+    }
+  }
+
+  private static File getKey(File pomFile) {
+    try {
+      return pomFile.getCanonicalFile();
+    } catch (IOException e) {
+      return pomFile.getAbsoluteFile();
+    }
+  }
+
+  private static class Entry {
+    private final long size;
+    private final long lastModified;
+    private final long parseTime;
+    private final Model model;
+
+    private Entry(long size, long lastModified, long parseTime, Model model) {
+      this.size = size;
+      this.lastModified = lastModified;
+      this.parseTime = parseTime;
+      this.model = model;
+    }
+  }
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import at.nonblocking.maven.nonsnapshot.PomConflictHandler;
+import at.nonblocking.maven.nonsnapshot.ScmHandler;
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+import org.codehaus.plexus.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Change detection without SCM history, e.g. for source exports.
+ * <br/>
+ * A module is changed if the content of its files differs from the one at the last version update,
+ * which is recorded in a {@link FilesystemSnapshot} when the POM files are "committed". Only files whose size
+ * or modification time changed are hashed again. Nothing is committed or pushed.
+ * <br/>
+ * SCM metadata directories, the target directories of modules and the state files of this plugin (the snapshot
+ * and the files given as property "filesystemStateFiles", by exact path) are not considered.
+ */
+@Component(role = ScmHandler.class, hint = "FILESYSTEM")
+public class ScmHandlerFilesystemImpl implements ScmHandler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ScmHandlerFilesystemImpl.class);
+
+  private static final List<String> SCM_DIRECTORIES = Arrays.asList(".git", ".svn", ".hg");
+  private static final byte[] NO_DIGEST = new byte[0];
+
+  private File baseDir;
+  private File snapshotFile;
+  private Set<Path> stateFiles = new HashSet<>();
+  private ChangeRelevance changeRelevance = new ChangeRelevance(Collections.<String>emptyList(), Collections.<String>emptyList());
+
+  @Override
+  public boolean isWorkingCopy(File path) {
+    return this.baseDir != null;
+  }
+
+  @Override
+  public boolean checkChangesSinceRevision(File moduleDirectory, String revisionId) {
+    return checkChangesSinceRevision(Collections.singletonList(moduleDirectory), revisionId).get(moduleDirectory);
+  }
+
+  @Override
+  public Map<File, Boolean> checkChangesSinceRevision(Collection<File> moduleDirectories, String revisionId) {
+    throw new NonSnapshotPluginException("Revisions are not supported without SCM: " + revisionId);
+  }
+
+  @Override
+  public boolean checkChangesSinceDate(File moduleDirectory, Date date) {
+    return checkChangesSinceDate(Collections.singletonList(moduleDirectory), date).get(moduleDirectory);
+  }
+
+  /**
+   * A module is changed if any of its files has been modified after given date.
+   */
+  @Override
+  public Map<File, Boolean> checkChangesSinceDate(Collection<File> moduleDirectories, Date date) {
+    Map<File, Boolean> changes = new HashMap<>();
+    try {
+      ModuleScopeIndex scopeIndex = new ModuleScopeIndex(this.baseDir, moduleDirectories);
+      SortedMap<String, FilesystemSnapshot.FileEntry> files = scanFiles(null);
+      for (String path : scopeIndex.getPaths()) {
+        boolean changed = false;
+        for (FilesystemSnapshot.FileEntry file : getScopeFiles(files, path).values()) {
+          if (file.getLastModified() > date.getTime()) {
+            changed = true;
+            break;
+          }
+        }
+        for (File moduleDirectory : scopeIndex.getScopes(path)) {
+          LOG.debug("Module folder {}: Modified since {}: {}", new Object[]{moduleDirectory.getAbsolutePath(), date, changed});
+          changes.put(moduleDirectory, changed);
+        }
+      }
+
+    } catch (IOException e) {
+      LOG.warn("Failed to check changes for paths (assume changed): {}", moduleDirectories, e);
+    }
+
+    return ScmHandlerGitImpl.toResult(moduleDirectories, changes, true);
+  }
+
+  @Override
+  public boolean checkChangesSinceLastUpdate(File moduleDirectory) {
+    return checkChangesSinceLastUpdate(Collections.singletonList(moduleDirectory)).get(moduleDirectory);
+  }
+
+  /**
+   * Compare the content digest of each module scope with the one recorded at the last version update.
+   * Modules without a recorded digest are assumed changed.
+   */
+  @Override
+  public Map<File, Boolean> checkChangesSinceLastUpdate(Collection<File> moduleDirectories) {
+    Map<File, Boolean> changes = new HashMap<>();
+    try {
+      ModuleScopeIndex scopeIndex = new ModuleScopeIndex(this.baseDir, moduleDirectories);
+      FilesystemSnapshot snapshot = FilesystemSnapshot.load(this.snapshotFile, this.changeRelevance.getFingerprint());
+      SortedMap<String, FilesystemSnapshot.FileEntry> files = scanFiles(snapshot);
+
+      for (String path : scopeIndex.getPaths()) {
+        byte[] lastDigest = snapshot.getScopeDigest(path);
+        boolean changed = lastDigest == null || lastDigest.length == 0 || !Arrays.equals(lastDigest, digest(getScopeFiles(files, path)));
+        for (File moduleDirectory : scopeIndex.getScopes(path)) {
+          if (changed) {
+            LOG.info("Module folder {}: Content differs from last version update, requires revision update.", moduleDirectory.getAbsolutePath());
+          } else {
+            LOG.info("Module folder {}: Content unchanged since last version update, no needs in version update.", moduleDirectory.getAbsolutePath());
+          }
+          changes.put(moduleDirectory, changed);
+        }
+        if (!snapshot.hasScope(path)) {
+          snapshot.setScopeDigest(path, NO_DIGEST);
+        }
+      }
+
+      snapshot.setFiles(files);
+      snapshot.write(this.snapshotFile);
+
+    } catch (IOException e) {
+      LOG.warn("Failed to check changes for paths (assume changed): {}", moduleDirectories, e);
+    }
+
+    return ScmHandlerGitImpl.toResult(moduleDirectories, changes, true);
+  }
+
+  /**
+   * Without SCM there is nothing uncommitted, the module contents are compared anyway.
+   */
+  @Override
+  public Map<File, Boolean> checkUncommittedChanges(Collection<File> moduleDirectories) {
+    return ScmHandlerGitImpl.toResult(moduleDirectories, Collections.<File, Boolean>emptyMap(), false);
+  }
+
+  @Override
+  public void commitFiles(List<File> files, String commitMessage) {
+    commitFiles(files, commitMessage, null);
+  }
+
+  /**
+   * Nothing to commit, but the content of all known module scopes becomes the new baseline.
+   */
+  @Override
+  public void commitFiles(List<File> files, String commitMessage, PomConflictHandler conflictHandler) {
+    LOG.info("No SCM: Recording the module contents instead of committing {} files", files.size());
+    try {
+      FilesystemSnapshot snapshot = FilesystemSnapshot.load(this.snapshotFile, this.changeRelevance.getFingerprint());
+      SortedMap<String, FilesystemSnapshot.FileEntry> currentFiles = scanFiles(snapshot);
+      for (String path : snapshot.getScopePaths()) {
+        snapshot.setScopeDigest(path, digest(getScopeFiles(currentFiles, path)));
+      }
+      snapshot.setFiles(currentFiles);
+      snapshot.write(this.snapshotFile);
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to record the module contents!", e);
+    }
+  }
+
+  @Override
+  public void createTags(List<String> tagNames) {
+    LOG.warn("No SCM: Tags are not supported");
+  }
+
+  @Override
+  public void recordVersionUpdates(List<MavenModule> mavenModules) {
+    LOG.warn("No SCM: The version ledger is not supported");
+  }
+
+  @Override
+  public String findVersionUpdateCommit(String groupId, String artifactId, String version) {
+    return null;
+  }
+
+  @Override
+  public int allocateBuildNumber(String groupId, String artifactId, int minimum) {
+    return minimum;
+  }
+
+  @Override
+  public int peekBuildNumber(String groupId, String artifactId, int minimum) {
+    return minimum;
+  }
+
+  @Override
+  public void init(File baseDir, String scmUser, String scmPassword, Properties properties) {
+    this.baseDir = baseDir.getAbsoluteFile();
+    if (properties == null || properties.getProperty("filesystemSnapshotFile") == null) {
+      throw new NonSnapshotPluginException("No SCM: The location of the filesystem snapshot (filesystemSnapshotFile) is not configured");
+    }
+    this.snapshotFile = new File(properties.getProperty("filesystemSnapshotFile")).getAbsoluteFile();
+    this.stateFiles.add(this.snapshotFile.toPath().normalize());
+    if (properties.getProperty("filesystemStateFiles") != null) {
+      for (String stateFile : ScmHandlerGitImpl.splitLines(properties.getProperty("filesystemStateFiles"))) {
+        this.stateFiles.add(new File(stateFile).getAbsoluteFile().toPath().normalize());
+      }
+    }
+    if (properties != null && properties.getProperty("gitIgnoredPaths") != null) {
+      this.changeRelevance = new ChangeRelevance(ScmHandlerGitImpl.splitLines(properties.getProperty("gitIgnoredPaths")), Collections.<String>emptyList());
+    }
+    LOG.info("No SCM: Detecting changes with the filesystem snapshot {}", this.snapshotFile.getAbsolutePath());
+  }
+
+  @Override
+  public String getBranchName() {
+    return null;
+  }
+
+  /**
+   * Collect all relevant files below the base directory. If a snapshot is given the files are hashed,
+   * reusing the recorded hashes of files with unchanged stat data.
+   */
+  private SortedMap<String, FilesystemSnapshot.FileEntry> scanFiles(final FilesystemSnapshot snapshot) throws IOException {
+    final SortedMap<String, FilesystemSnapshot.FileEntry> files = new TreeMap<>();
+    final Path basePath = this.baseDir.toPath();
+    final MessageDigest messageDigest = newMessageDigest();
+    final int[] hashedFiles = new int[1];
+
+    Files.walkFileTree(basePath, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        String name = dir.getFileName() != null ? dir.getFileName().toString() : "";
+        if (SCM_DIRECTORIES.contains(name) || ("target".equals(name) && Files.exists(dir.resolveSibling("pom.xml")))) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        String path = basePath.relativize(file).toString().replace('\\', '/');
+        if (!attrs.isRegularFile() || stateFiles.contains(file.toAbsolutePath().normalize())
+            || changeRelevance.isIgnoredPath(path)) {
+          return FileVisitResult.CONTINUE;
+        }
+
+        long size = attrs.size();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        byte[] hash = null;
+        if (snapshot != null) {
+          hash = snapshot.getUnchangedHash(path, size, lastModified);
+          if (hash == null) {
+            hash = hash(messageDigest, file);
+            hashedFiles[0]++;
+          }
+        }
+        files.put(path, new FilesystemSnapshot.FileEntry(size, lastModified, hash));
+        return FileVisitResult.CONTINUE;
+      }
+    });
+
+    if (snapshot != null) {
+      LOG.debug("Scanned {} files, hashed {} of them", files.size(), hashedFiles[0]);
+    }
+    return files;
+  }
+
+  /**
+   * All files of given scope path. The paths within a directory are a contiguous range of the sorted paths.
+   */
+  private static SortedMap<String, FilesystemSnapshot.FileEntry> getScopeFiles(SortedMap<String, FilesystemSnapshot.FileEntry> files, String path) {
+    if (path.equals(ModuleScopeIndex.ROOT_PATH)) {
+      return files;
+    }
+    if (files.containsKey(path)) {
+      return files.subMap(path, path + "\0");
+    }
+    return files.subMap(path + "/", path + "0");
+  }
+
+  private static byte[] digest(SortedMap<String, FilesystemSnapshot.FileEntry> files) {
+    MessageDigest messageDigest = newMessageDigest();
+    for (Map.Entry<String, FilesystemSnapshot.FileEntry> file : files.entrySet()) {
+      messageDigest.update(file.getKey().getBytes(StandardCharsets.UTF_8));
+      messageDigest.update((byte) 0);
+      messageDigest.update(file.getValue().getHash());
+    }
+    return messageDigest.digest();
+  }
+
+  private static byte[] hash(MessageDigest messageDigest, Path file) throws IOException {
+    messageDigest.reset();
+    byte[] buffer = new byte[65536];
+    try (InputStream in = Files.newInputStream(file)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        messageDigest.update(buffer, 0, read);
+      }
+    }
+    return messageDigest.digest();
+  }
+
+  @Override
+  public void close() {
+    // Nothing to release
+  }
+
+  private static MessageDigest newMessageDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new NonSnapshotPluginException("SHA-1 not available", e);
+    }
+  }
+
+}
@@ -0,0 +1,393 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import at.nonblocking.maven.nonsnapshot.ScmHandler;
+import org.codehaus.plexus.component.annotations.Component;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * GIT handler which reads the history with the native git executable instead of JGit.
+ * <br/>
+ * Each history walk runs a single git log process, whose output is parsed while git is still running (and which is
+ * killed as soon as the result is known), so native speedups like commit-graph files are used. Object lookups
+ * (scope tree ids, tree comparisons) are answered by one long-lived git cat-file --batch process per handler.
+ * Everything that writes to the repository is inherited from {@link ScmHandlerGitImpl}.
+ */
+@Component(role = ScmHandler.class, hint = "GIT_CLI")
+public class ScmHandlerGitCliImpl extends ScmHandlerGitImpl {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ScmHandlerGitCliImpl.class);
+
+  private static final char RECORD_SEPARATOR = '\u001e';
+  private static final char FIELD_SEPARATOR = '\u001f';
+  private static final String LOG_FORMAT = "--format=%x1e%H%x1f%an <%ae>%x1f%cn <%ce>%x1f%ct%x1f%B%x1f";
+
+  private static final String GIT_EXECUTABLE = "git";
+
+  private GitCatFileBatch catFileBatch;
+
+  @Override
+  public void init(File baseDir, String scmUser, String scmPassword, Properties properties) {
+    super.init(baseDir, scmUser, scmPassword, properties);
+    LOG.info("Reading the history with the native git executable");
+  }
+
+  @Override
+  void findLastChanges(ObjectId head, ObjectId end, ModuleScopeIndex scopeIndex, Set<String> unresolvedPaths,
+                       Map<String, GitChangeState.Entry> lastChanges) throws IOException {
+    if (unresolvedPaths.isEmpty()) {
+      return;
+    }
+
+    List<String> revisions = new ArrayList<>();
+    revisions.add(head.name());
+    if (end != null) {
+      revisions.add("^" + end.name());
+    }
+
+    Set<ObjectId> shallowCommits = getShallowCommits();
+
+    try (GitProcess log = startLog(Collections.<String>emptyList(), revisions, unresolvedPaths)) {
+      LogEntry entry;
+      while ((entry = readLogEntry(log)) != null) {
+        boolean versionUpdate = VersionUpdateRevFilter.isVersionUpdate(entry.message);
+        if ((!versionUpdate && isIgnoredCommit(entry)) || (!shallowCommits.isEmpty() && shallowCommits.contains(ObjectId.fromString(entry.commitId)))) {
+          continue;
+        }
+
+        for (String touchedPath : findTouchedScopePaths(entry, unresolvedPaths)) {
+          unresolvedPaths.remove(touchedPath);
+          lastChanges.put(touchedPath, new GitChangeState.Entry(ObjectId.fromString(entry.commitId), !versionUpdate));
+          for (File moduleDirectory : scopeIndex.getScopes(touchedPath)) {
+            logLastChange(moduleDirectory, entry.commitId, entry.commitTime, entry.message, versionUpdate);
+          }
+        }
+
+        if (unresolvedPaths.isEmpty()) {
+          return;
+        }
+      }
+      log.waitForSuccess();
+    }
+  }
+
+  @Override
+  void findChangesSinceDate(ObjectId head, Date date, ModuleScopeIndex scopeIndex, Set<String> unresolvedPaths,
+                            Map<File, Boolean> changes) throws IOException {
+    if (unresolvedPaths.isEmpty()) {
+      return;
+    }
+
+    // Commit times have a resolution of seconds, so start with the first full second after the given date
+    List<String> options = Collections.singletonList("--max-age=" + (date.getTime() / 1000 + 1));
+
+    Set<ObjectId> shallowCommits = getShallowCommits();
+
+    try (GitProcess log = startLog(options, Collections.singletonList(head.name()), unresolvedPaths)) {
+      LogEntry entry;
+      while ((entry = readLogEntry(log)) != null) {
+        if (VersionUpdateRevFilter.isVersionUpdate(entry.message) || isIgnoredCommit(entry)
+            || (!shallowCommits.isEmpty() && shallowCommits.contains(ObjectId.fromString(entry.commitId)))) {
+          continue;
+        }
+
+        for (String touchedPath : findTouchedScopePaths(entry, unresolvedPaths)) {
+          unresolvedPaths.remove(touchedPath);
+          for (File moduleDirectory : scopeIndex.getScopes(touchedPath)) {
+            LOG.debug("Module folder {}: Change since last commit: rev{} @ {} ({})",
+                new Object[]{moduleDirectory.getAbsolutePath(), entry.commitId, entry.commitTime, entry.message});
+            changes.put(moduleDirectory, true);
+          }
+        }
+
+        if (unresolvedPaths.isEmpty()) {
+          return;
+        }
+      }
+      log.waitForSuccess();
+    }
+  }
+
+  @Override
+  void findChangedScopePaths(ObjectId from, ObjectId to, ModuleScopeIndex scopeIndex, Set<String> unchangedPaths, Set<String> changedPaths)
+      throws IOException {
+    findChangedScopePaths(from, to, unchangedPaths, changedPaths);
+  }
+
+  /**
+   * Compare the trees of both commits like git diff-tree -r, but read them through the long-lived git cat-file --batch
+   * process. Equal subtrees and subtrees outside of the unchanged scope paths are skipped.
+   */
+  private void findChangedScopePaths(ObjectId from, ObjectId to, Set<String> unchangedPaths, Set<String> changedPaths) throws IOException {
+    if (unchangedPaths.isEmpty()) {
+      return;
+    }
+
+    GitCatFileBatch catFile = getCatFileBatch();
+    findChangedScopePaths(catFile, catFile.readTree(from.name() + "^{tree}"), catFile.readTree(to.name() + "^{tree}"),
+        ModuleScopeIndex.ROOT_PATH, unchangedPaths, changedPaths);
+  }
+
+  private void findChangedScopePaths(GitCatFileBatch catFile, Map<String, GitCatFileBatch.TreeEntry> fromTree,
+                                     Map<String, GitCatFileBatch.TreeEntry> toTree, String treePath,
+                                     Set<String> unchangedPaths, Set<String> changedPaths) throws IOException {
+    Set<String> names = new TreeSet<>();
+    if (fromTree != null) {
+      names.addAll(fromTree.keySet());
+    }
+    if (toTree != null) {
+      names.addAll(toTree.keySet());
+    }
+
+    for (String name : names) {
+      if (unchangedPaths.isEmpty()) {
+        return;
+      }
+
+      GitCatFileBatch.TreeEntry fromEntry = fromTree != null ? fromTree.get(name) : null;
+      GitCatFileBatch.TreeEntry toEntry = toTree != null ? toTree.get(name) : null;
+      String path = treePath.isEmpty() ? name : treePath + "/" + name;
+      if ((fromEntry != null && fromEntry.sameAs(toEntry)) || !overlapsAny(path, unchangedPaths)) {
+        continue;
+      }
+
+      boolean fromIsTree = fromEntry != null && fromEntry.isTree();
+      boolean toIsTree = toEntry != null && toEntry.isTree();
+      if (fromIsTree || toIsTree) {
+        findChangedScopePaths(catFile,
+            fromIsTree ? catFile.readTree(fromEntry.getId()) : null, toIsTree ? catFile.readTree(toEntry.getId()) : null,
+            path, unchangedPaths, changedPaths);
+      }
+      // A file replaced by a directory (or the other way around) is a changed file as well
+      if ((fromEntry != null && !fromIsTree) || (toEntry != null && !toIsTree)) {
+        if (!getChangeRelevance().isIgnoredPath(path)) {
+          ModuleScopeIndex.collectScopePaths(path, unchangedPaths, changedPaths);
+          unchangedPaths.removeAll(changedPaths);
+        }
+      }
+    }
+  }
+
+  /**
+   * Check if given path is one of the scope paths, or contains or is contained in one of them.
+   */
+  private static boolean overlapsAny(String path, Set<String> scopePaths) {
+    if (scopePaths.contains(ModuleScopeIndex.ROOT_PATH)) {
+      return true;
+    }
+    for (String scopePath : scopePaths) {
+      if (scopePath.equals(path) || scopePath.startsWith(path + "/") || path.startsWith(scopePath + "/")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String objectName(ObjectId commit, String path) {
+    return path.equals(ModuleScopeIndex.ROOT_PATH) ? commit.name() + "^{tree}" : commit.name() + ":" + path;
+  }
+
+  /**
+   * The git cat-file --batch process of this handler, which is started with the first lookup and kept
+   * until the handler is closed.
+   */
+  private synchronized GitCatFileBatch getCatFileBatch() throws IOException {
+    if (this.catFileBatch == null) {
+      this.catFileBatch = new GitCatFileBatch(startGit("cat-file", "--batch"));
+    }
+    return this.catFileBatch;
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (this.catFileBatch != null) {
+        this.catFileBatch.close();
+        this.catFileBatch = null;
+      }
+    }
+    super.close();
+  }
+
+  @Override
+  ObjectId findLastVersionUpdate(ObjectId head) throws IOException {
+    List<String> arguments = new ArrayList<>(Arrays.asList("log", "--format=%x1e%H%x1f%B", "--fixed-strings",
+        "--grep=" + ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX, "--grep=" + ScmHandler.NONSNAPSHOT_COMMIT_TRAILER));
+    if (isFirstParent()) {
+      arguments.add("--first-parent");
+    }
+    arguments.add(head.name());
+
+    try (GitProcess log = startGit(arguments.toArray(new String[arguments.size()]))) {
+      String record;
+      while ((record = log.readUntil(RECORD_SEPARATOR)) != null) {
+        int separator = record.indexOf(FIELD_SEPARATOR);
+        // The grep also matches the text in the middle of a message
+        if (separator != -1 && VersionUpdateRevFilter.isVersionUpdate(record.substring(separator + 1))) {
+          return ObjectId.fromString(record.substring(0, separator));
+        }
+      }
+      log.waitForSuccess();
+    }
+    return null;
+  }
+
+  /**
+   * Look up the entries of all paths in both commits with the long-lived git cat-file --batch process.
+   */
+  @Override
+  Map<String, Boolean> compareScopes(ObjectId from, ObjectId to, Collection<String> paths) throws IOException {
+    GitCatFileBatch catFile = getCatFileBatch();
+
+    Map<String, Boolean> result = new HashMap<>();
+    Set<String> differentPaths = new HashSet<>();
+    for (String path : paths) {
+      GitCatFileBatch.GitObject fromObject = catFile.read(objectName(from, path));
+      GitCatFileBatch.GitObject toObject = catFile.read(objectName(to, path));
+      if (fromObject == null || toObject == null) {
+        result.put(path, true);
+      } else if (fromObject.getId().equals(toObject.getId())) {
+        result.put(path, false);
+      } else {
+        differentPaths.add(path);
+      }
+    }
+
+    if (!differentPaths.isEmpty() && getChangeRelevance().hasIgnoredPaths()) {
+      Set<String> changedPaths = new HashSet<>();
+      Set<String> unchangedPaths = new HashSet<>(differentPaths);
+      findChangedScopePaths(from, to, unchangedPaths, changedPaths);
+      for (String path : differentPaths) {
+        result.put(path, changedPaths.contains(path));
+      }
+    } else {
+      for (String path : differentPaths) {
+        result.put(path, true);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Start a git log with the names of the changed files of each commit, limited to given scope paths.
+   * <br/>
+   * Merge commits only list the files which differ from all parents (or from the first parent in first parent mode),
+   * like the JGit based walk does.
+   */
+  private GitProcess startLog(List<String> options, List<String> revisions, Set<String> scopePaths) throws IOException {
+    List<String> arguments = new ArrayList<>(Arrays.asList("log", "-z", "--name-only", "--no-renames", LOG_FORMAT, "--stdin"));
+    arguments.addAll(options);
+    if (isFirstParent()) {
+      arguments.add("--first-parent");
+      arguments.add("-m");
+    } else {
+      arguments.add("-c");
+      arguments.add("--full-history");
+    }
+
+    List<String> input = new ArrayList<>(revisions);
+    if (!scopePaths.contains(ModuleScopeIndex.ROOT_PATH)) {
+      input.add("--");
+      input.addAll(scopePaths);
+    }
+
+    GitProcess log = startGit(arguments.toArray(new String[arguments.size()]));
+    log.writeLines(input);
+    return log;
+  }
+
+  private GitProcess startGit(String... arguments) throws IOException {
+    List<String> command = new ArrayList<>();
+    command.add("--literal-pathspecs");
+    command.addAll(Arrays.asList(arguments));
+    return new GitProcess(GIT_EXECUTABLE, getBaseDir(), command);
+  }
+
+  /**
+   * Read the next commit of a git log started with {@link #startLog(List, List, Set)}.
+   *
+   * @return LogEntry or null at the end of the log
+   */
+  private static LogEntry readLogEntry(GitProcess log) throws IOException {
+    String record;
+    while ((record = log.readUntil(RECORD_SEPARATOR)) != null) {
+      String[] fields = record.split(String.valueOf(FIELD_SEPARATOR), 6);
+      if (fields.length < 6) {
+        continue;
+      }
+
+      LogEntry entry = new LogEntry();
+      entry.commitId = fields[0];
+      entry.author = fields[1];
+      entry.committer = fields[2];
+      entry.commitTime = new Date(Long.parseLong(fields[3]) * 1000L);
+      entry.message = fields[4];
+      for (String path : fields[5].split("\u0000")) {
+        if (path.startsWith("\n")) {
+          path = path.substring(1);
+        }
+        if (!path.isEmpty()) {
+          entry.paths.add(path);
+        }
+      }
+      return entry;
+    }
+    return null;
+  }
+
+  private boolean isIgnoredCommit(LogEntry entry) {
+    return getChangeRelevance().hasIgnoredAuthors()
+        && (getChangeRelevance().isIgnoredPerson(entry.author) || getChangeRelevance().isIgnoredPerson(entry.committer));
+  }
+
+  private Set<String> findTouchedScopePaths(LogEntry entry, Set<String> unresolvedPaths) {
+    Set<String> touchedPaths = new HashSet<>();
+    for (String path : entry.paths) {
+      if (!getChangeRelevance().isIgnoredPath(path)) {
+        ModuleScopeIndex.collectScopePaths(path, unresolvedPaths, touchedPaths);
+      }
+    }
+    return touchedPaths;
+  }
+
+  private static class LogEntry {
+    private String commitId;
+    private String author;
+    private String committer;
+    private Date commitTime;
+    private String message;
+    private final List<String> paths = new ArrayList<>();
+  }
+}
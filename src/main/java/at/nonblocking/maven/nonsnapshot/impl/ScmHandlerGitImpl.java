@@ -16,24 +16,83 @@
 package at.nonblocking.maven.nonsnapshot.impl;
 
 import at.nonblocking.maven.nonsnapshot.PathUtil;
+import at.nonblocking.maven.nonsnapshot.PomConflictHandler;
 import at.nonblocking.maven.nonsnapshot.ScmHandler;
 import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 import com.jcraft.jsch.Session;
 import org.codehaus.plexus.component.annotations.Component;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.LogCommand;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.diff.RawText;
+import org.eclipse.jgit.diff.RawTextComparator;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.TransportException;
 import org.eclipse.jgit.errors.UnsupportedCredentialItem;
 import org.eclipse.jgit.internal.storage.file.FileRepository;
+import org.eclipse.jgit.lib.BranchConfig;
+import org.eclipse.jgit.lib.BatchRefUpdate;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.IndexDiff;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.merge.MergeAlgorithm;
+import org.eclipse.jgit.merge.MergeFormatter;
+import org.eclipse.jgit.merge.MergeResult;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.AndRevFilter;
+import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
 import org.eclipse.jgit.transport.*;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.RawParseUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * GIT implementation of {@link at.nonblocking.maven.nonsnapshot.ScmHandler} based on JGit.
@@ -45,10 +104,28 @@ public class ScmHandlerGitImpl implements ScmHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(ScmHandlerGitImpl.class);
 
+  private static final String BUILD_NUMBER_COUNTER_REF_PREFIX = "refs/nonsnapshot/counters/";
+  private static final int MAX_BUILD_NUMBER_ALLOCATION_ATTEMPTS = 1000;
+
+  private static final String SHALLOW_POLICY_CHANGED = "CHANGED";
+  private static final String SHALLOW_POLICY_TRUST_STATE = "TRUST_STATE";
+  private static final String SHALLOW_POLICY_TREE_ID = "TREE_ID";
+
   private File baseDir;
   private Git git;
   private CredentialsProvider credentialsProvider;
   private boolean doPush = true;
+  private int pushRetries = 3;
+  private long pushRetryDelay = 1000;
+  private File changeStateFile;
+  private boolean treeIdChangeDetection;
+  private boolean firstParent;
+  private boolean versionLedger;
+  private boolean versionLedgerFetched;
+  private String shallowPolicy = SHALLOW_POLICY_CHANGED;
+  private Set<ObjectId> shallowCommits;
+  private ChangeRelevance changeRelevance = new ChangeRelevance(Collections.<String>emptyList(), Collections.<String>emptyList());
+  private int threads = Runtime.getRuntime().availableProcessors();
 
   static {
     SshSessionFactory.setInstance(new JschConfigSessionFactory() {
@@ -66,117 +143,1430 @@ public class ScmHandlerGitImpl implements ScmHandler {
 
   @Override
   public boolean checkChangesSinceRevision(final File moduleDirectory, String revisionId) {
-    throw new RuntimeException("Operation checkChangesSinceRevision() not supported by the GIT handler");
+    return checkChangesSinceRevision(Collections.singletonList(moduleDirectory), revisionId).get(moduleDirectory);
+  }
+
+  @Override
+  public Map<File, Boolean> checkChangesSinceRevision(Collection<File> moduleDirectories, String revisionId) {
+    Map<File, Boolean> changes = new HashMap<>();
+
+    if (this.git == null) {
+      return toResult(moduleDirectories, changes, false);
+    }
+
+    Repository repository = this.git.getRepository();
+    ObjectId revision;
+    try {
+      revision = repository.resolve(revisionId);
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to resolve revision: " + revisionId, e);
+    }
+    if (revision == null) {
+      throw new NonSnapshotPluginException("Revision not found: " + revisionId);
+    }
+
+    try {
+      ModuleScopeIndex scopeIndex = new ModuleScopeIndex(this.baseDir, moduleDirectories);
+      Set<String> unchangedPaths = new HashSet<>(scopeIndex.getPaths());
+      Set<String> changedPaths = new HashSet<>();
+      findChangedScopePaths(revision, repository.resolve(Constants.HEAD), scopeIndex, unchangedPaths, changedPaths);
+
+      for (String path : scopeIndex.getPaths()) {
+        boolean changed = changedPaths.contains(path);
+        for (File moduleDirectory : scopeIndex.getScopes(path)) {
+          LOG.debug("Module folder {}: Changed since revision {}: {}", new Object[]{moduleDirectory.getAbsolutePath(), revisionId, changed});
+          changes.put(moduleDirectory, changed);
+        }
+      }
+
+    } catch (Exception e) {
+      LOG.warn("Failed to check changes since revision {} (assume changed): {}", new Object[]{revisionId, moduleDirectories, e});
+    }
+
+    return toResult(moduleDirectories, changes, true);
+  }
+
+  /**
+   * Diff the two commits and move all scope paths containing a (not ignored) changed path from the unchanged to the changed set.
+   */
+  void findChangedScopePaths(ObjectId from, ObjectId to, ModuleScopeIndex scopeIndex, Set<String> unchangedPaths, Set<String> changedPaths)
+      throws IOException {
+    try (RevWalk walk = new RevWalk(this.git.getRepository());
+         TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+      treeWalk.setRecursive(true);
+      treeWalk.addTree(walk.parseCommit(from).getTree());
+      treeWalk.addTree(walk.parseCommit(to).getTree());
+      treeWalk.setFilter(AndTreeFilter.create(ModuleScopeIndex.createTreeFilter(unchangedPaths), TreeFilter.ANY_DIFF));
+
+      while (!unchangedPaths.isEmpty() && treeWalk.next()) {
+        if (!this.changeRelevance.isIgnoredPath(treeWalk.getPathString())) {
+          ModuleScopeIndex.collectScopePaths(treeWalk.getPathString(), unchangedPaths, changedPaths);
+          unchangedPaths.removeAll(changedPaths);
+        }
+      }
+    }
   }
 
   @Override
   public boolean checkChangesSinceDate(final File moduleDirectory, final Date date) {
+    return checkChangesSinceDate(Collections.singletonList(moduleDirectory), date).get(moduleDirectory);
+  }
+
+  @Override
+  public Map<File, Boolean> checkChangesSinceDate(Collection<File> moduleDirectories, Date date) {
+    Map<File, Boolean> changes = new HashMap<>();
+
     if (this.git == null) {
-      return false;
+      return toResult(moduleDirectories, changes, false);
     }
 
     try {
-      String modulePath = PathUtil.relativePath(this.baseDir, moduleDirectory);
+      ModuleScopeIndex scopeIndex = new ModuleScopeIndex(this.baseDir, moduleDirectories);
+      Set<String> unresolvedPaths = new HashSet<>(scopeIndex.getPaths());
+      ObjectId head = this.git.getRepository().resolve(Constants.HEAD);
 
-      LogCommand logCommand = this.git
-          .log()
-          .setMaxCount(100);
+      if (head != null) {
+        findChangesSinceDate(head, date, scopeIndex, unresolvedPaths, changes);
+      }
 
-      if (!modulePath.isEmpty()) {
-        logCommand.addPath(modulePath);
+      for (String unresolvedPath : unresolvedPaths) {
+        for (File moduleDirectory : scopeIndex.getScopes(unresolvedPath)) {
+          LOG.debug("Module folder {}: No change since {}", moduleDirectory.getAbsolutePath(), date);
+          changes.put(moduleDirectory, false);
+        }
       }
 
-      for (RevCommit commit : logCommand.call()) {
-        Date commitTime = new Date(commit.getCommitTime() * 1000L);
-        if (commitTime.after(date)) {
-          if (!commit.getFullMessage().startsWith(NONSNAPSHOT_COMMIT_MESSAGE_PREFIX)) {
-            LOG.debug("Module folder {}: Change since last commit: rev{} @ {} ({})",
-                new Object[]{moduleDirectory.getAbsolutePath(), commit.getId(), commitTime, commit.getFullMessage()});
-            return true;
+    } catch (Exception e) {
+      LOG.warn("Failed to check changes for paths (assume changed): {}", moduleDirectories, e);
+    }
+
+    return toResult(moduleDirectories, changes, true);
+  }
+
+  /**
+   * Mark all paths touched by a commit (other than a version update) after given date as changed.
+   */
+  void findChangesSinceDate(ObjectId head, Date date, ModuleScopeIndex scopeIndex, Set<String> unresolvedPaths,
+                            Map<File, Boolean> changes) throws IOException {
+    try (RevWalk walk = new RevWalk(this.git.getRepository())) {
+      // Commit times have a resolution of seconds, so start with the first full second after the given date
+      walk.setRevFilter(CommitTimeRevFilter.after((date.getTime() / 1000 + 1) * 1000));
+      findChangesSinceDate(walk, walkCommits(walk, walk.parseCommit(head), null), scopeIndex, unresolvedPaths, changes);
+    }
+  }
+
+  /**
+   * Walk given commits, which stop at the first commit older than the cutoff date,
+   * and mark all paths touched by a commit (other than a version update or a shallow boundary commit) as changed.
+   * <br/>
+   * The walk stops as soon as all paths are resolved.
+   */
+  private void findChangesSinceDate(RevWalk walk, Iterable<RevCommit> commits, ModuleScopeIndex scopeIndex, Set<String> unresolvedPaths,
+                                    Map<File, Boolean> changes) throws IOException {
+    if (unresolvedPaths.isEmpty()) {
+      return;
+    }
+
+    RevFlag versionUpdateFlag = markVersionUpdates(walk);
+    RevFlag ignoredFlag = markIgnoredCommits(walk);
+    Set<ObjectId> shallowCommits = getShallowCommits();
+
+    try (TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+      treeWalk.setRecursive(true);
+
+      TreeFilter pathFilter = null;
+      int pathFilterSize = -1;
+
+      for (RevCommit commit : commits) {
+        try {
+          // The parents of a shallow boundary commit are missing, so its diff would contain the whole tree
+          if (commit.has(versionUpdateFlag) || commit.has(ignoredFlag) || shallowCommits.contains(commit)) {
+            continue;
           }
-        } else {
-          break;
+
+          if (pathFilterSize != unresolvedPaths.size()) {
+            pathFilter = ModuleScopeIndex.createTreeFilter(unresolvedPaths);
+            pathFilterSize = unresolvedPaths.size();
+          }
+
+          Set<String> touchedPaths = findTouchedScopePaths(treeWalk, commit, pathFilter, scopeIndex, unresolvedPaths);
+          if (touchedPaths.isEmpty()) {
+            continue;
+          }
+
+          for (String touchedPath : touchedPaths) {
+            unresolvedPaths.remove(touchedPath);
+            for (File moduleDirectory : scopeIndex.getScopes(touchedPath)) {
+              LOG.debug("Module folder {}: Change since last commit: rev{} @ {} ({})",
+                  new Object[]{moduleDirectory.getAbsolutePath(), commit.getId(), new Date(commit.getCommitTime() * 1000L), commit.getFullMessage()});
+              changes.put(moduleDirectory, true);
+            }
+          }
+
+          if (unresolvedPaths.isEmpty()) {
+            break;
+          }
+        } finally {
+          // The message is only needed while the commit is processed
+          commit.disposeBody();
         }
       }
+    }
+  }
 
-    } catch (Exception e) {
-      LOG.warn("Failed to check changes for path: {}" + moduleDirectory.getAbsolutePath(), e);
-      return true;
+  /**
+   * Run the given check for all paths on a bounded number of worker threads.
+   * <br/>
+   * Each worker gets its own {@link ObjectReader} over the shared repository and creates a fresh {@link RevWalk}
+   * on it for each path (a walk with a tree filter rewrites the parents of its commits, so it cannot be reused).
+   * Failed checks assume a change.
+   */
+  private Map<String, Boolean> checkInParallel(Collection<String> paths, final PathCheck pathCheck) throws InterruptedException {
+    final Map<String, Boolean> result = new ConcurrentHashMap<>();
+    final Queue<String> pendingPaths = new ConcurrentLinkedQueue<>(paths);
+    final Repository repository = this.git.getRepository();
+
+    int workerCount = Math.max(1, Math.min(this.threads, paths.size()));
+    LOG.debug("Checking {} paths with {} threads", paths.size(), workerCount);
+
+    ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+    try {
+      List<Future<?>> workers = new ArrayList<>(workerCount);
+      for (int i = 0; i < workerCount; i++) {
+        workers.add(executor.submit(() -> {
+          try (ObjectReader reader = repository.newObjectReader()) {
+            String path;
+            while ((path = pendingPaths.poll()) != null) {
+              try (RevWalk walk = new RevWalk(reader)) {
+                result.put(path, pathCheck.isChanged(walk, path));
+              } catch (Exception e) {
+                LOG.warn("Failed to check changes for path (assume changed): {}", path, e);
+                result.put(path, true);
+              }
+            }
+          }
+        }));
+      }
+      for (Future<?> worker : workers) {
+        worker.get();
+      }
+    } catch (ExecutionException e) {
+      throw new NonSnapshotPluginException("Failed to check changes", e.getCause());
+    } finally {
+      executor.shutdownNow();
     }
 
-    return false;
+    return result;
   }
 
   @Override
   public boolean checkChangesSinceLastUpdate(File moduleDirectory) {
-      if (this.git == null) {
-          return false;
-      }
+    return checkChangesSinceLastUpdate(Collections.singletonList(moduleDirectory)).get(moduleDirectory);
+  }
+
+  @Override
+  public Map<File, Boolean> checkChangesSinceLastUpdate(Collection<File> moduleDirectories) {
+    Map<File, Boolean> changes = new HashMap<>();
+
+    if (this.git == null) {
+      return toResult(moduleDirectories, changes, false);
+    }
 
-      try {
-          String modulePath = PathUtil.relativePath(this.baseDir, moduleDirectory);
-          LogCommand logCommand = this.git
-                  .log()
-                  .setMaxCount(1);
+    try {
+      ModuleScopeIndex scopeIndex = new ModuleScopeIndex(this.baseDir, moduleDirectories);
+      Map<String, GitChangeState.Entry> lastChanges = new HashMap<>();
+      Repository repository = this.git.getRepository();
+
+      ObjectId head = repository.resolve(Constants.HEAD);
+      if (head != null && this.treeIdChangeDetection) {
+        lastChanges.putAll(findChangesByTreeId(head, scopeIndex));
 
-          if (!modulePath.isEmpty()) {
-              logCommand.addPath(modulePath);
+      } else if (head != null) {
+        GitChangeState changeState = this.changeStateFile != null ? GitChangeState.load(this.changeStateFile, getChangeDetectionSettings()) : null;
+        Set<String> unknownPaths = new HashSet<>(scopeIndex.getPaths());
+
+        if (this.versionLedger) {
+          applyVersionLedger(repository, head, scopeIndex, unknownPaths, lastChanges, false);
+        }
+
+        if (changeState != null && changeState.getHead() != null) {
+          applyChangeState(repository, changeState, head, scopeIndex, unknownPaths, lastChanges);
+        }
+
+        if (!unknownPaths.isEmpty()) {
+          findLastChanges(head, null, scopeIndex, unknownPaths, lastChanges);
+
+          if (!unknownPaths.isEmpty() && !getShallowCommits().isEmpty()) {
+            applyShallowPolicy(repository, changeState, head, scopeIndex, unknownPaths, lastChanges);
           }
 
-          RevCommit commit = logCommand.call().iterator().next();
-          if (!commit.getFullMessage().startsWith(NONSNAPSHOT_COMMIT_MESSAGE_PREFIX)) {
-              LOG.info("Module folder {}: Last change requires revision update: rev{} @ {} ({})",
-                      new Object[]{
-                              moduleDirectory.getAbsolutePath(),
-                              commit.getId(),
-                              new Date(commit.getCommitTime() * 1000L),
-                              commit.getFullMessage()});
-              return true;
-          } else {
-              LOG.info("Module folder {}: Last change is version update, no needs in version update.",
-                      new Object[]{moduleDirectory.getAbsolutePath()});
-              return false;
+          for (String unknownPath : unknownPaths) {
+            for (File moduleDirectory : scopeIndex.getScopes(unknownPath)) {
+              LOG.info("Module folder {}: No commit found, assume changed.", moduleDirectory.getAbsolutePath());
+            }
+            lastChanges.put(unknownPath, new GitChangeState.Entry(ObjectId.zeroId(), true));
           }
-      } catch (Exception e) {
-          LOG.warn("Failed to check changes for path (assume changed): {}" + moduleDirectory.getAbsolutePath(), e);
+        }
+
+        if (changeState != null) {
+          changeState.update(head, lastChanges);
+          changeState.write(this.changeStateFile);
+        }
+      }
+
+      for (Map.Entry<String, GitChangeState.Entry> lastChange : lastChanges.entrySet()) {
+        for (File moduleDirectory : scopeIndex.getScopes(lastChange.getKey())) {
+          changes.put(moduleDirectory, lastChange.getValue().isChanged());
+        }
+      }
+
+    } catch (Exception e) {
+      LOG.warn("Failed to check changes for paths (assume changed): {}", moduleDirectories, e);
+    }
+
+    return toResult(moduleDirectories, changes, true);
+  }
+
+  /**
+   * Compare the tree id of each module scope at the most recent version update commit with the one at HEAD.
+   * <br/>
+   * Equal ids mean the module is unchanged, so this only costs O(path depth) per module and doesn't depend on the
+   * history length. The returned entries all refer to the version update commit.
+   */
+  private Map<String, GitChangeState.Entry> findChangesByTreeId(ObjectId head, ModuleScopeIndex scopeIndex)
+      throws IOException, InterruptedException {
+    Map<String, GitChangeState.Entry> lastChanges = new HashMap<>();
+
+    ObjectId versionUpdateCommit = findLastVersionUpdate(head);
+    if (versionUpdateCommit == null) {
+      LOG.info("No version update commit found. Assume all modules changed.");
+      for (String path : scopeIndex.getPaths()) {
+        lastChanges.put(path, new GitChangeState.Entry(ObjectId.zeroId(), true));
+      }
+      return lastChanges;
+    }
+
+    LOG.info("Comparing module trees with last version update: rev{}", versionUpdateCommit.name());
+
+    Map<String, Boolean> pathChanges = compareScopes(versionUpdateCommit, head, scopeIndex.getPaths());
+    for (Map.Entry<String, Boolean> pathChange : pathChanges.entrySet()) {
+      for (File moduleDirectory : scopeIndex.getScopes(pathChange.getKey())) {
+        if (pathChange.getValue()) {
+          LOG.info("Module folder {}: Content differs from last version update, requires revision update.", moduleDirectory.getAbsolutePath());
+        } else {
+          LOG.info("Module folder {}: Content unchanged since last version update, no needs in version update.", moduleDirectory.getAbsolutePath());
+        }
+      }
+      lastChanges.put(pathChange.getKey(), new GitChangeState.Entry(versionUpdateCommit, pathChange.getValue()));
+    }
+
+    return lastChanges;
+  }
+
+  /**
+   * Find the most recent version update commit reachable from head.
+   *
+   * @return the commit id or null
+   */
+  ObjectId findLastVersionUpdate(ObjectId head) throws IOException {
+    try (RevWalk walk = new RevWalk(this.git.getRepository())) {
+      RevCommit headCommit = walk.parseCommit(head);
+      walk.setRetainBody(false);
+      walk.setRevFilter(new VersionUpdateRevFilter());
+      Iterator<RevCommit> versionUpdateCommits = walkCommits(walk, headCommit, null).iterator();
+      return versionUpdateCommits.hasNext() ? versionUpdateCommits.next().copy() : null;
+    }
+  }
+
+  /**
+   * Compare the given scope paths between the two commits. A scope is changed if its tree id differs
+   * (and, with ignored paths, a not ignored file differs).
+   */
+  Map<String, Boolean> compareScopes(ObjectId from, ObjectId to, Collection<String> paths) throws IOException, InterruptedException {
+    final ObjectId fromTree;
+    final ObjectId toTree;
+    try (RevWalk walk = new RevWalk(this.git.getRepository())) {
+      fromTree = walk.parseCommit(from).getTree().copy();
+      toTree = walk.parseCommit(to).getTree().copy();
+    }
+
+    return checkInParallel(paths, (pathWalk, path) -> {
+      ObjectId fromId = findTreeEntry(pathWalk.getObjectReader(), fromTree, path);
+      ObjectId toId = findTreeEntry(pathWalk.getObjectReader(), toTree, path);
+      if (fromId == null || toId == null) {
+        return true;
+      }
+      if (fromId.equals(toId)) {
+        return false;
+      }
+      return !this.changeRelevance.hasIgnoredPaths() || hasRelevantDifference(pathWalk.getObjectReader(), fromTree, toTree, path);
+    });
+  }
+
+  /**
+   * Diff given path between the two trees and check if any changed file is not ignored.
+   */
+  private boolean hasRelevantDifference(ObjectReader reader, ObjectId tree1, ObjectId tree2, String path) throws IOException {
+    try (TreeWalk treeWalk = new TreeWalk(reader)) {
+      treeWalk.setRecursive(true);
+      treeWalk.addTree(tree1);
+      treeWalk.addTree(tree2);
+      treeWalk.setFilter(AndTreeFilter.create(ModuleScopeIndex.createTreeFilter(Collections.singleton(path)), TreeFilter.ANY_DIFF));
+      while (treeWalk.next()) {
+        if (!this.changeRelevance.isIgnoredPath(treeWalk.getPathString())) {
           return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static ObjectId findTreeEntry(ObjectReader reader, ObjectId tree, String path) throws IOException {
+    if (path.equals(ModuleScopeIndex.ROOT_PATH)) {
+      return tree;
+    }
+    try (TreeWalk treeWalk = TreeWalk.forPath(reader, path, tree)) {
+      return treeWalk != null ? treeWalk.getObjectId(0) : null;
+    }
+  }
+
+  /**
+   * Resolve the module scopes which are not touched by any commit after the shallow boundary according to the shallow policy:
+   * <ul>
+   *   <li>CHANGED: Leave them unresolved (so they are assumed changed)</li>
+   *   <li>TRUST_STATE: Take the entries of the version ledger and the change detection state, even if their commits are
+   *   beyond the shallow boundary</li>
+   *   <li>TREE_ID: Compare them with the most recent version update commit within the shallow history. A module which
+   *   was not updated by that commit was not dirty at that time, so it is unchanged if its tree is still the same</li>
+   * </ul>
+   */
+  private void applyShallowPolicy(Repository repository, GitChangeState changeState, ObjectId head, ModuleScopeIndex scopeIndex,
+                                  Set<String> unknownPaths, Map<String, GitChangeState.Entry> lastChanges) throws IOException, InterruptedException, GitAPIException {
+    LOG.info("Shallow history: {} module scopes are not touched after the shallow boundary, applying shallow policy {}",
+        unknownPaths.size(), this.shallowPolicy);
+
+    if (SHALLOW_POLICY_TRUST_STATE.equals(this.shallowPolicy)) {
+      if (this.versionLedger) {
+        applyVersionLedger(repository, head, scopeIndex, unknownPaths, lastChanges, true);
+      }
+      if (changeState != null) {
+        for (String path : new ArrayList<>(unknownPaths)) {
+          GitChangeState.Entry lastChange = changeState.getEntry(path);
+          if (lastChange != null) {
+            for (File moduleDirectory : scopeIndex.getScopes(path)) {
+              LOG.info("Module folder {}: Last change taken from change detection state beyond the shallow boundary: rev{}",
+                  moduleDirectory.getAbsolutePath(), lastChange.getCommitId().name());
+            }
+            lastChanges.put(path, lastChange);
+            unknownPaths.remove(path);
+          }
+        }
+      }
+
+    } else if (SHALLOW_POLICY_TREE_ID.equals(this.shallowPolicy)) {
+      ObjectId versionUpdateCommit = findLastVersionUpdate(head);
+      if (versionUpdateCommit == null) {
+        LOG.info("No version update commit found within the shallow history.");
+        return;
+      }
+
+      Map<String, Boolean> pathChanges = compareScopes(versionUpdateCommit, head, unknownPaths);
+      for (Map.Entry<String, Boolean> pathChange : pathChanges.entrySet()) {
+        for (File moduleDirectory : scopeIndex.getScopes(pathChange.getKey())) {
+          LOG.info("Module folder {}: Compared with version update rev{} within the shallow history, {}.", new Object[]{
+              moduleDirectory.getAbsolutePath(), versionUpdateCommit.name(), pathChange.getValue() ? "requires revision update" : "no needs in version update"});
+        }
+        lastChanges.put(pathChange.getKey(), new GitChangeState.Entry(versionUpdateCommit, pathChange.getValue()));
+        unknownPaths.remove(pathChange.getKey());
+      }
+    }
+  }
+
+  /**
+   * The boundary commits of a shallow clone (from .git/shallow), read once. Their parents are missing,
+   * so they must not be diffed against the empty tree.
+   *
+   * @return Set<ObjectId>, empty if the repository is complete
+   */
+  synchronized Set<ObjectId> getShallowCommits() throws IOException {
+    if (this.shallowCommits == null) {
+      Set<ObjectId> shallowCommits = new HashSet<>();
+      File shallowFile = new File(this.git.getRepository().getDirectory(), "shallow");
+      if (shallowFile.isFile()) {
+        for (String line : Files.readAllLines(shallowFile.toPath(), StandardCharsets.US_ASCII)) {
+          if (ObjectId.isId(line.trim())) {
+            shallowCommits.add(ObjectId.fromString(line.trim()));
+          }
+        }
+        LOG.info("Shallow clone with {} boundary commits", shallowCommits.size());
+      }
+      this.shallowCommits = shallowCommits;
+    }
+    return this.shallowCommits;
+  }
+
+  /**
+   * Take the last version update of each module scope from the version ledger.
+   * <br/>
+   * The ledger entry is only used if the module POM at HEAD is still the one of the recorded version update
+   * (otherwise there is a later update missing in the ledger or the POM changed) and the version update commit
+   * is part of the history. Then the module changed if its scope differs between that commit and HEAD.
+   * If unverifiable entries are trusted (beyond a shallow boundary) the reachability is not checked and a missing
+   * version update commit means unchanged.
+   */
+  private void applyVersionLedger(Repository repository, ObjectId head, ModuleScopeIndex scopeIndex,
+                                  Set<String> unknownPaths, Map<String, GitChangeState.Entry> lastChanges, boolean trustUnverifiable) throws IOException, GitAPIException {
+    VersionLedger ledger = readVersionLedger();
+    Map<ObjectId, Boolean> reachableCommits = new HashMap<>();
+
+    try (RevWalk walk = new RevWalk(repository)) {
+      RevCommit headCommit = walk.parseCommit(head);
+      for (String path : new ArrayList<>(unknownPaths)) {
+        String pomPath = path.endsWith("pom.xml") ? path : path.equals(ModuleScopeIndex.ROOT_PATH) ? "pom.xml" : path + "/pom.xml";
+        VersionLedger.Entry entry = ledger.getLastEntry(pomPath);
+        if (entry == null) {
+          continue;
+        }
+
+        RevCommit versionUpdateCommit;
+        try {
+          versionUpdateCommit = walk.parseCommit(entry.getCommitId());
+        } catch (MissingObjectException e) {
+          if (!trustUnverifiable) {
+            continue;
+          }
+          versionUpdateCommit = null;
+        }
+
+        boolean changed = false;
+        if (versionUpdateCommit != null) {
+          ObjectId pomAtVersionUpdate = findTreeEntry(walk.getObjectReader(), versionUpdateCommit.getTree(), pomPath);
+          if (pomAtVersionUpdate == null || !pomAtVersionUpdate.equals(findTreeEntry(walk.getObjectReader(), headCommit.getTree(), pomPath))) {
+            continue;
+          }
+
+          Boolean reachable = trustUnverifiable ? Boolean.TRUE : reachableCommits.get(versionUpdateCommit);
+          if (reachable == null) {
+            reachable = walk.isMergedInto(versionUpdateCommit, headCommit);
+            reachableCommits.put(versionUpdateCommit.copy(), reachable);
+            walk.reset();
+          }
+          if (!reachable) {
+            continue;
+          }
+
+          ObjectId scopeAtVersionUpdate = findTreeEntry(walk.getObjectReader(), versionUpdateCommit.getTree(), path);
+          changed = scopeAtVersionUpdate == null || !scopeAtVersionUpdate.equals(findTreeEntry(walk.getObjectReader(), headCommit.getTree(), path))
+              && (!this.changeRelevance.hasIgnoredPaths() || hasRelevantDifference(walk.getObjectReader(), versionUpdateCommit.getTree(), headCommit.getTree(), path));
+        }
+
+        for (File moduleDirectory : scopeIndex.getScopes(path)) {
+          LOG.info("Module folder {}: Last version update {} taken from the version ledger, {}.", new Object[]{
+              moduleDirectory.getAbsolutePath(), entry.getVersion(), changed ? "requires revision update" : "no needs in version update"});
+        }
+        lastChanges.put(path, new GitChangeState.Entry(entry.getCommitId().copy(), changed));
+        unknownPaths.remove(path);
+      }
+    }
+  }
+
+  /**
+   * Take the last changes of all module scopes known by the state of the last run.
+   * <br/>
+   * If HEAD has not moved the state is taken as it is, otherwise only the commits since the recorded HEAD are walked.
+   * If the recorded HEAD is no ancestor of HEAD anymore (e.g. after a reset) the state is ignored.
+   */
+  private void applyChangeState(Repository repository, GitChangeState changeState, ObjectId head, ModuleScopeIndex scopeIndex,
+                                Set<String> unknownPaths, Map<String, GitChangeState.Entry> lastChanges) throws IOException {
+    Set<String> knownPaths = new HashSet<>();
+    for (String path : unknownPaths) {
+      if (changeState.getEntry(path) != null) {
+        knownPaths.add(path);
+      }
+    }
+
+    if (knownPaths.isEmpty()) {
+      return;
+    }
+
+    if (!head.equals(changeState.getHead())) {
+      try (RevWalk walk = new RevWalk(repository)) {
+        RevCommit headCommit = walk.parseCommit(head);
+        RevCommit lastHeadCommit;
+        try {
+          lastHeadCommit = walk.parseCommit(changeState.getHead());
+        } catch (MissingObjectException e) {
+          lastHeadCommit = null;
+        }
+
+        if (lastHeadCommit == null || !walk.isMergedInto(lastHeadCommit, headCommit)) {
+          LOG.info("Last processed HEAD {} is no ancestor of HEAD. Ignoring the change detection state.", changeState.getHead().name());
+          return;
+        }
+
+        LOG.info("Checking commits since last processed HEAD {}", changeState.getHead().name());
       }
+
+      Set<String> untouchedPaths = new HashSet<>(knownPaths);
+      findLastChanges(head, changeState.getHead(), scopeIndex, untouchedPaths, lastChanges);
+      knownPaths = untouchedPaths;
+    } else {
+      LOG.info("HEAD has not moved since the last run. Reusing the change detection state.");
+    }
+
+    for (String knownPath : knownPaths) {
+      GitChangeState.Entry lastChange = changeState.getEntry(knownPath);
+      for (File moduleDirectory : scopeIndex.getScopes(knownPath)) {
+        LOG.debug("Module folder {}: Last change taken from change detection state: rev{}", moduleDirectory.getAbsolutePath(), lastChange.getCommitId().name());
+      }
+      lastChanges.put(knownPath, lastChange);
+    }
+
+    unknownPaths.removeAll(lastChanges.keySet());
+  }
+
+  /**
+   * Start given walk at the head commit and stop before the (optional) end commit.
+   * <br/>
+   * In first parent mode only the first parent chain is returned, which bounds the walk to the mainline length.
+   */
+  private Iterable<RevCommit> walkCommits(RevWalk walk, RevCommit head, RevCommit end) throws IOException {
+    if (this.firstParent) {
+      return new FirstParentCommits(walk, head, end);
+    }
+    walk.markStart(head);
+    if (end != null) {
+      walk.markUninteresting(end);
+    }
+    return walk;
+  }
+
+  /**
+   * Record the last commit touching each of the unresolved paths, from head back to the (optional) end commit.
+   */
+  void findLastChanges(ObjectId head, ObjectId end, ModuleScopeIndex scopeIndex, Set<String> unresolvedPaths,
+                       Map<String, GitChangeState.Entry> lastChanges) throws IOException {
+    try (RevWalk walk = new RevWalk(this.git.getRepository())) {
+      RevCommit endCommit = end != null ? walk.parseCommit(end) : null;
+      findLastChanges(walk, walkCommits(walk, walk.parseCommit(head), endCommit), scopeIndex, unresolvedPaths, lastChanges);
+    }
+  }
+
+  /**
+   * Walk given commits and record the last commit touching each of the unresolved paths.
+   * <br/>
+   * Resolved paths are removed from the unresolved set and the walk stops as soon as all paths are resolved.
+   */
+  private void findLastChanges(RevWalk walk, Iterable<RevCommit> commits, ModuleScopeIndex scopeIndex, Set<String> unresolvedPaths,
+                               Map<String, GitChangeState.Entry> lastChanges) throws IOException {
+    if (unresolvedPaths.isEmpty()) {
+      return;
+    }
+
+    RevFlag versionUpdateFlag = markVersionUpdates(walk);
+    RevFlag ignoredFlag = markIgnoredCommits(walk);
+    Set<ObjectId> shallowCommits = getShallowCommits();
+
+    try (TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+      treeWalk.setRecursive(true);
+
+      TreeFilter pathFilter = null;
+      int pathFilterSize = -1;
+
+      for (RevCommit commit : commits) {
+        try {
+          if ((commit.has(ignoredFlag) && !commit.has(versionUpdateFlag)) || shallowCommits.contains(commit)) {
+            continue;
+          }
+
+          if (pathFilterSize != unresolvedPaths.size()) {
+            pathFilter = ModuleScopeIndex.createTreeFilter(unresolvedPaths);
+            pathFilterSize = unresolvedPaths.size();
+          }
+
+          Set<String> touchedPaths = findTouchedScopePaths(treeWalk, commit, pathFilter, scopeIndex, unresolvedPaths);
+          if (touchedPaths.isEmpty()) {
+            continue;
+          }
+
+          boolean versionUpdate = commit.has(versionUpdateFlag);
+          for (String touchedPath : touchedPaths) {
+            unresolvedPaths.remove(touchedPath);
+            lastChanges.put(touchedPath, new GitChangeState.Entry(commit.copy(), !versionUpdate));
+            for (File moduleDirectory : scopeIndex.getScopes(touchedPath)) {
+              logLastChange(moduleDirectory, commit, versionUpdate);
+            }
+          }
+
+          if (unresolvedPaths.isEmpty()) {
+            break;
+          }
+        } finally {
+          // The message is only needed while the commit is processed
+          commit.disposeBody();
+        }
+      }
+    }
+  }
+
+  /**
+   * Let given (not yet started) walk mark the version update commits with the returned flag.
+   * <br/>
+   * The commits are classified on their raw buffer, which the walk parses once and retains, so the message of
+   * a commit can be accessed afterwards without reading it again. Dispose the body once the commit is processed.
+   */
+  private static RevFlag markVersionUpdates(RevWalk walk) {
+    RevFlag versionUpdateFlag = walk.newFlag("VERSION_UPDATE");
+    walk.setRetainBody(true);
+    walk.setRevFilter(AndRevFilter.create(walk.getRevFilter(), new VersionUpdateRevFilter(versionUpdateFlag)));
+    return versionUpdateFlag;
+  }
+
+  /**
+   * Let given (not yet started) walk mark the commits of ignored authors or committers with the returned flag.
+   */
+  private RevFlag markIgnoredCommits(RevWalk walk) {
+    RevFlag ignoredFlag = walk.newFlag("IGNORED");
+    if (this.changeRelevance.hasIgnoredAuthors()) {
+      walk.setRevFilter(AndRevFilter.create(walk.getRevFilter(), new IgnoredCommitRevFilter(this.changeRelevance, ignoredFlag)));
+    }
+    return ignoredFlag;
+  }
+
+  /**
+   * Diff given commit against its parents and return all (not yet resolved) scope paths containing a changed path.
+   * <br/>
+   * Merge commits only count a path as changed if it differs from all parents, like the path limited git log does.
+   * In first parent mode merge commits are only compared with their first parent.
+   */
+  private Set<String> findTouchedScopePaths(TreeWalk treeWalk, RevCommit commit, TreeFilter pathFilter,
+                                            ModuleScopeIndex scopeIndex, Set<String> unresolvedPaths) throws IOException {
+    treeWalk.reset();
+    if (commit.getParentCount() == 0) {
+      treeWalk.addTree(new EmptyTreeIterator());
+    } else if (this.firstParent) {
+      treeWalk.addTree(commit.getParent(0).getTree());
+    } else {
+      for (RevCommit parent : commit.getParents()) {
+        treeWalk.addTree(parent.getTree());
+      }
+    }
+    int commitTree = treeWalk.addTree(commit.getTree());
+    treeWalk.setFilter(AndTreeFilter.create(pathFilter, TreeFilter.ANY_DIFF));
+
+    Set<String> touchedPaths = new HashSet<>();
+    while (treeWalk.next()) {
+      if (differsFromAllParents(treeWalk, commitTree) && !this.changeRelevance.isIgnoredPath(treeWalk.getPathString())) {
+        ModuleScopeIndex.collectScopePaths(treeWalk.getPathString(), unresolvedPaths, touchedPaths);
+      }
+    }
+    return touchedPaths;
+  }
+
+  private static boolean differsFromAllParents(TreeWalk treeWalk, int commitTree) {
+    for (int i = 0; i < commitTree; i++) {
+      if (treeWalk.idEqual(i, commitTree) && treeWalk.getRawMode(i) == treeWalk.getRawMode(commitTree)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void logLastChange(File moduleDirectory, RevCommit commit, boolean versionUpdate) {
+    logLastChange(moduleDirectory, commit.getId().name(), versionUpdate ? null : new Date(commit.getCommitTime() * 1000L),
+        versionUpdate ? null : commit.getFullMessage(), versionUpdate);
+  }
+
+  static void logLastChange(File moduleDirectory, String commitId, Date commitTime, String message, boolean versionUpdate) {
+    if (!versionUpdate) {
+      LOG.info("Module folder {}: Last change requires revision update: rev{} @ {} ({})",
+          new Object[]{
+              moduleDirectory.getAbsolutePath(),
+              commitId,
+              commitTime,
+              message});
+    } else {
+      LOG.info("Module folder {}: Last change is version update, no needs in version update.",
+          new Object[]{moduleDirectory.getAbsolutePath()});
+    }
+  }
+
+  static Map<File, Boolean> toResult(Collection<File> moduleDirectories, Map<File, Boolean> changes, boolean defaultValue) {
+    Map<File, Boolean> result = new LinkedHashMap<>();
+    for (File moduleDirectory : moduleDirectories) {
+      Boolean changed = changes.get(moduleDirectory);
+      result.put(moduleDirectory, changed != null ? changed : defaultValue);
+    }
+    return result;
+  }
+
+  /**
+   * A single {@link IndexDiff} limited to the module scopes. The working tree is compared using the
+   * stat data in the index (with racily clean detection), so only files with changed stat data are read.
+   */
+  @Override
+  public Map<File, Boolean> checkUncommittedChanges(Collection<File> moduleDirectories) {
+    Map<File, Boolean> changes = new HashMap<>();
+
+    if (this.git == null) {
+      return toResult(moduleDirectories, changes, false);
+    }
+
+    try {
+      ModuleScopeIndex scopeIndex = new ModuleScopeIndex(this.baseDir, moduleDirectories);
+      Repository repository = this.git.getRepository();
+      IndexDiff indexDiff = new IndexDiff(repository, Constants.HEAD, new FileTreeIterator(repository));
+      indexDiff.setFilter(ModuleScopeIndex.createTreeFilter(scopeIndex.getPaths()));
+      indexDiff.diff();
+
+      Set<String> uncommittedPaths = new HashSet<>();
+      uncommittedPaths.addAll(indexDiff.getAdded());
+      uncommittedPaths.addAll(indexDiff.getChanged());
+      uncommittedPaths.addAll(indexDiff.getRemoved());
+      uncommittedPaths.addAll(indexDiff.getMissing());
+      uncommittedPaths.addAll(indexDiff.getModified());
+      uncommittedPaths.addAll(indexDiff.getUntracked());
+      uncommittedPaths.addAll(indexDiff.getConflicting());
+
+      Set<String> changedPaths = new HashSet<>();
+      for (String uncommittedPath : uncommittedPaths) {
+        if (!this.changeRelevance.isIgnoredPath(uncommittedPath)) {
+          ModuleScopeIndex.collectScopePaths(uncommittedPath, scopeIndex.getPaths(), changedPaths);
+        }
+      }
+
+      for (String path : scopeIndex.getPaths()) {
+        boolean changed = changedPaths.contains(path);
+        for (File moduleDirectory : scopeIndex.getScopes(path)) {
+          LOG.debug("Module folder {}: Uncommitted changes: {}", moduleDirectory.getAbsolutePath(), changed);
+          changes.put(moduleDirectory, changed);
+        }
+      }
+
+    } catch (IOException e) {
+      LOG.warn("Failed to check uncommitted changes for paths (assume changed): {}", moduleDirectories, e);
+    }
+
+    return toResult(moduleDirectories, changes, true);
   }
 
   @Override
   public void commitFiles(List<File> files, String commitMessage) {
+    commitFiles(files, commitMessage, null);
+  }
+
+  @Override
+  public void commitFiles(List<File> files, String commitMessage, PomConflictHandler conflictHandler) {
     LOG.debug("Committing files: {}", files);
 
     try {
+      LOG.debug("Git: Committing changes");
+      ObjectId commitId = commit(files, commitMessage);
+
+      if (this.doPush) {
+        push(files, commitId, conflictHandler);
+      }
+
+    } catch (Exception e) {
+      throw new NonSnapshotPluginException("Failed to commit files!", e);
+    }
+  }
+
+  /**
+   * Push the commit. If the push is rejected because the remote has moved on, the commit is replayed
+   * onto the new upstream commit and pushed again, with an exponential backoff between the attempts.
+   */
+  private void push(List<File> files, ObjectId commitId, PomConflictHandler conflictHandler) throws Exception {
+    for (int attempt = 0; ; attempt++) {
+      LOG.debug("Git: Pushing changes");
+      RemoteRefUpdate.Status status = RemoteRefUpdate.Status.OK;
+      Iterable<PushResult> pushResults = this.git
+          .push()
+          .setCredentialsProvider(this.credentialsProvider)
+          .call();
+      for (PushResult pushResult : pushResults) {
+        for (RemoteRefUpdate remoteRefUpdate : pushResult.getRemoteUpdates()) {
+          if (remoteRefUpdate.getStatus() != RemoteRefUpdate.Status.OK && remoteRefUpdate.getStatus() != RemoteRefUpdate.Status.UP_TO_DATE) {
+            status = remoteRefUpdate.getStatus();
+          }
+        }
+      }
+
+      if (status == RemoteRefUpdate.Status.OK) {
+        return;
+      }
+      if (status != RemoteRefUpdate.Status.REJECTED_NONFASTFORWARD && status != RemoteRefUpdate.Status.REJECTED_REMOTE_CHANGED) {
+        throw new NonSnapshotPluginException("Push failed: " + status);
+      }
+      if (attempt >= this.pushRetries) {
+        throw new NonSnapshotPluginException("Push rejected after " + (attempt + 1) + " attempts: " + status);
+      }
+
+      long delay = this.pushRetryDelay << attempt;
+      LOG.info("Push rejected ({}). Replaying the version update onto the upstream branch and retrying in {} ms.", status, delay);
+      Thread.sleep(delay);
+      commitId = replayOntoUpstream(files, commitId, conflictHandler);
+    }
+  }
+
+  /**
+   * Fetch the upstream branch and replay the (POM only) commit onto it.
+   * <br/>
+   * The changes of each file are merged line by line with the upstream changes. Files where both touched the same lines
+   * are taken from upstream and passed to the conflict handler, which recomputes their versions.
+   * The work tree, the index and HEAD are moved to the upstream commit before the new commit is created.
+   */
+  private ObjectId replayOntoUpstream(List<File> files, ObjectId commitId, PomConflictHandler conflictHandler) throws Exception {
+    Repository repository = this.git.getRepository();
+    BranchConfig branchConfig = new BranchConfig(repository.getConfig(), repository.getBranch());
+    String remote = getRemoteName();
+
+    LOG.debug("Git: Fetching {}", remote);
+    this.git
+        .fetch()
+        .setRemote(remote)
+        .setCredentialsProvider(this.credentialsProvider)
+        .call();
+
+    String upstreamBranch = branchConfig.getRemoteTrackingBranch() != null
+        ? branchConfig.getRemoteTrackingBranch() : Constants.R_REMOTES + remote + "/" + repository.getBranch();
+    ObjectId upstream = repository.resolve(upstreamBranch);
+    if (upstream == null) {
+      throw new NonSnapshotPluginException("Upstream branch not found: " + upstreamBranch);
+    }
+
+    Map<File, byte[]> mergedFiles = new LinkedHashMap<>();
+    List<File> conflictedFiles = new ArrayList<>();
+    String commitMessage;
+
+    try (RevWalk walk = new RevWalk(repository)) {
+      RevCommit commit = walk.parseCommit(commitId);
+      RevCommit upstreamCommit = walk.parseCommit(upstream);
+      ObjectId baseTree = commit.getParentCount() > 0 ? walk.parseCommit(commit.getParent(0)).getTree() : null;
+      commitMessage = commit.getFullMessage();
+
       for (File file : files) {
-        String filePath = PathUtil.relativePath(this.baseDir, file);
+        String path = PathUtil.relativePath(this.baseDir, file);
+        byte[] base = baseTree != null ? readBlob(walk.getObjectReader(), baseTree, path) : null;
+        byte[] ours = readBlob(walk.getObjectReader(), commit.getTree(), path);
+        byte[] theirs = readBlob(walk.getObjectReader(), upstreamCommit.getTree(), path);
+        byte[] merged = mergeLines(base, ours, theirs);
+        if (merged != null) {
+          mergedFiles.put(file, merged);
+        } else {
+          LOG.info("Conflicting upstream changes in: {}", path);
+          conflictedFiles.add(file);
+        }
+      }
 
+      DirCacheCheckout checkout = new DirCacheCheckout(repository, commit.getTree(), repository.lockDirCache(), upstreamCommit.getTree());
+      checkout.setFailOnConflict(true);
+      checkout.checkout();
+
+      RefUpdate refUpdate = repository.updateRef(Constants.HEAD);
+      refUpdate.setNewObjectId(upstream);
+      refUpdate.setExpectedOldObjectId(commitId);
+      refUpdate.setForceUpdate(true);
+      refUpdate.setRefLogMessage("nonsnapshot: replay onto " + upstreamBranch, false);
+      RefUpdate.Result result = refUpdate.update();
+      if (result != RefUpdate.Result.FORCED && result != RefUpdate.Result.FAST_FORWARD) {
+        throw new NonSnapshotPluginException("Failed to move HEAD to upstream commit " + upstream.name() + ": " + result);
+      }
+    }
+
+    for (Map.Entry<File, byte[]> mergedFile : mergedFiles.entrySet()) {
+      Files.write(mergedFile.getKey().toPath(), mergedFile.getValue());
+    }
+
+    if (!conflictedFiles.isEmpty()) {
+      if (conflictHandler == null) {
+        throw new NonSnapshotPluginException("Conflicting upstream changes in: " + conflictedFiles);
+      }
+      commitMessage = conflictHandler.resolveConflicts(conflictedFiles);
+    }
+
+    return commit(files, commitMessage);
+  }
+
+  private static byte[] readBlob(ObjectReader reader, ObjectId tree, String path) throws IOException {
+    try (TreeWalk treeWalk = TreeWalk.forPath(reader, path, tree)) {
+      return treeWalk != null ? reader.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getBytes() : null;
+    }
+  }
+
+  /**
+   * Three way merge of the lines of a file. Returns null if both sides changed the same lines.
+   */
+  private static byte[] mergeLines(byte[] base, byte[] ours, byte[] theirs) throws IOException {
+    if (theirs == null || Arrays.equals(base, theirs) || Arrays.equals(ours, theirs)) {
+      return ours;
+    }
+    if (ours == null || Arrays.equals(base, ours)) {
+      return theirs;
+    }
+    if (base == null) {
+      return null;
+    }
+
+    MergeResult<RawText> mergeResult = new MergeAlgorithm().merge(RawTextComparator.DEFAULT,
+        new RawText(base), new RawText(ours), new RawText(theirs));
+    if (mergeResult.containsConflicts()) {
+      return null;
+    }
+    ByteArrayOutputStream merged = new ByteArrayOutputStream();
+    new MergeFormatter().formatMerge(merged, mergeResult, Arrays.asList("BASE", "OURS", "THEIRS"), Constants.CHARACTER_ENCODING);
+    return merged.toByteArray();
+  }
+
+
+  /**
+   * Commit given files without a git add per file.
+   * <br/>
+   * The blobs are written with an {@link ObjectInserter} and only the entries of the given files are edited
+   * in the index, so the index is read and written once. The commit object is created directly and
+   * the branch is updated with a compare-and-swap against the HEAD the commit is based on.
+   */
+  private ObjectId commit(List<File> files, String commitMessage) throws IOException {
+    Repository repository = this.git.getRepository();
+    DirCache index = repository.lockDirCache();
+    try (ObjectInserter inserter = repository.newObjectInserter()) {
+      DirCacheEditor editor = index.editor();
+      for (final File file : files) {
+        String filePath = PathUtil.relativePath(this.baseDir, file);
         LOG.debug("Git: Adding file: {}", filePath);
-        this.git
-            .add()
-            .addFilepattern(filePath)
-            .call();
+
+        byte[] content = Files.readAllBytes(file.toPath());
+        final ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, content);
+        final int length = content.length;
+        final long lastModified = file.lastModified();
+        editor.add(new DirCacheEditor.PathEdit(filePath) {
+          @Override
+          public void apply(DirCacheEntry entry) {
+            if (entry.getRawMode() == 0) {
+              entry.setFileMode(FileMode.REGULAR_FILE);
+            }
+            entry.setObjectId(blobId);
+            entry.setLength(length);
+            entry.setLastModified(lastModified);
+          }
+        });
       }
+      editor.finish();
 
-      LOG.debug("Git: Committing changes");
-      this.git
-          .commit()
-          .setMessage(commitMessage)
-          .call();
+      ObjectId head = repository.resolve(Constants.HEAD);
+      PersonIdent ident = new PersonIdent(repository);
+      CommitBuilder commitBuilder = new CommitBuilder();
+      commitBuilder.setTreeId(index.writeTree(inserter));
+      if (head != null) {
+        commitBuilder.setParentId(head);
+      }
+      commitBuilder.setAuthor(ident);
+      commitBuilder.setCommitter(ident);
+      commitBuilder.setMessage(commitMessage);
+      ObjectId commitId = inserter.insert(commitBuilder);
+      inserter.flush();
+
+      RefUpdate refUpdate = repository.updateRef(Constants.HEAD);
+      refUpdate.setNewObjectId(commitId);
+      refUpdate.setExpectedOldObjectId(head != null ? head : ObjectId.zeroId());
+      refUpdate.setRefLogMessage("commit: " + commitMessage.split("\n", 2)[0], false);
+      RefUpdate.Result result = refUpdate.update();
+      if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FAST_FORWARD) {
+        throw new NonSnapshotPluginException("Failed to update HEAD to commit " + commitId.name() + ": " + result);
+      }
+
+      index.write();
+      if (!index.commit()) {
+        LOG.warn("Failed to write the index after commit {}", commitId.name());
+      }
+      return commitId;
+
+    } finally {
+      index.unlock();
+    }
+  }
+
+  /**
+   * All tags are created with a single {@link BatchRefUpdate} (so packed-refs is not rewritten per tag)
+   * and pushed with a single push.
+   */
+  @Override
+  public void createTags(List<String> tagNames) {
+    if (tagNames.isEmpty()) {
+      return;
+    }
+
+    Repository repository = this.git.getRepository();
+    try (RevWalk walk = new RevWalk(repository)) {
+      ObjectId head = repository.resolve(Constants.HEAD);
+      BatchRefUpdate batchRefUpdate = repository.getRefDatabase().newBatchUpdate();
+      batchRefUpdate.setRefLogMessage("nonsnapshot: tag versions", false);
+      List<RefSpec> refSpecs = new ArrayList<>();
+      for (String tagName : tagNames) {
+        String refName = Constants.R_TAGS + tagName;
+        if (!Repository.isValidRefName(refName)) {
+          throw new NonSnapshotPluginException("Invalid tag name: " + tagName);
+        }
+        LOG.debug("Git: Creating tag: {}", tagName);
+        batchRefUpdate.addCommand(new ReceiveCommand(ObjectId.zeroId(), head, refName));
+        refSpecs.add(new RefSpec(refName + ":" + refName));
+      }
+
+      batchRefUpdate.execute(walk, NullProgressMonitor.INSTANCE);
+      for (ReceiveCommand command : batchRefUpdate.getCommands()) {
+        if (command.getResult() != ReceiveCommand.Result.OK) {
+          throw new NonSnapshotPluginException("Failed to create tag " + command.getRefName() + ": " + command.getResult());
+        }
+      }
 
       if (this.doPush) {
-        LOG.debug("Git: Pushing changes");
-        this.git
+        LOG.debug("Git: Pushing {} tags", refSpecs.size());
+        Iterable<PushResult> pushResults = this.git
             .push()
+            .setRefSpecs(refSpecs)
             .setCredentialsProvider(this.credentialsProvider)
             .call();
+        for (PushResult pushResult : pushResults) {
+          for (RemoteRefUpdate remoteRefUpdate : pushResult.getRemoteUpdates()) {
+            if (remoteRefUpdate.getStatus() != RemoteRefUpdate.Status.OK && remoteRefUpdate.getStatus() != RemoteRefUpdate.Status.UP_TO_DATE) {
+              throw new NonSnapshotPluginException("Failed to push tag " + remoteRefUpdate.getRemoteName() + ": " + remoteRefUpdate.getStatus());
+            }
+          }
+        }
       }
 
-    } catch (Exception e) {
-      throw new NonSnapshotPluginException("Failed to commit files!", e);
+    } catch (IOException | GitAPIException e) {
+      throw new NonSnapshotPluginException("Failed to create tags!", e);
     }
   }
 
+  /**
+   * Append the version updates to the version ledger. If pushing is enabled the ledger is first fetched and the new
+   * ledger commit is built on top of the remote tip. A rejected push (another run published in between) is retried
+   * with the new remote tip, if the ledger cannot be published the run fails.
+   */
+  @Override
+  public void recordVersionUpdates(List<MavenModule> mavenModules) {
+    if (this.git == null || mavenModules.isEmpty()) {
+      return;
+    }
+
+    Repository repository = this.git.getRepository();
+    try {
+      ObjectId head = repository.resolve(Constants.HEAD);
+      List<VersionLedger.Entry> entries = new ArrayList<>();
+      for (MavenModule mavenModule : mavenModules) {
+        String version = mavenModule.getNewVersion() != null ? mavenModule.getNewVersion() : mavenModule.getVersion();
+        entries.add(new VersionLedger.Entry(mavenModule.getGroupId(), mavenModule.getArtifactId(), version, head,
+            PathUtil.relativePath(this.baseDir, mavenModule.getPomFile())));
+      }
+
+      if (!this.doPush) {
+        LOG.debug("Git: Adding {} entries to the version ledger", entries.size());
+        VersionLedger.append(repository, entries);
+        return;
+      }
+
+      for (int attempt = 0; ; attempt++) {
+        fetchVersionLedger();
+        LOG.debug("Git: Adding {} entries to the version ledger", entries.size());
+        VersionLedger.append(repository, entries);
+
+        RemoteRefUpdate.Status status = RemoteRefUpdate.Status.OK;
+        Iterable<PushResult> pushResults = this.git
+            .push()
+            .setRemote(getRemoteName())
+            .setRefSpecs(new RefSpec(VersionLedger.LEDGER_REF + ":" + VersionLedger.LEDGER_REF))
+            .setCredentialsProvider(this.credentialsProvider)
+            .call();
+        for (PushResult pushResult : pushResults) {
+          for (RemoteRefUpdate remoteRefUpdate : pushResult.getRemoteUpdates()) {
+            if (remoteRefUpdate.getStatus() != RemoteRefUpdate.Status.OK && remoteRefUpdate.getStatus() != RemoteRefUpdate.Status.UP_TO_DATE) {
+              status = remoteRefUpdate.getStatus();
+            }
+          }
+        }
+
+        if (status == RemoteRefUpdate.Status.OK) {
+          return;
+        }
+        if (status != RemoteRefUpdate.Status.REJECTED_NONFASTFORWARD && status != RemoteRefUpdate.Status.REJECTED_REMOTE_CHANGED) {
+          throw new NonSnapshotPluginException("Failed to push the version ledger: " + status);
+        }
+        if (attempt >= this.pushRetries) {
+          throw new NonSnapshotPluginException("Push of the version ledger rejected after " + (attempt + 1) + " attempts: " + status);
+        }
+
+        long delay = this.pushRetryDelay << attempt;
+        LOG.info("Push of the version ledger rejected ({}). Rebuilding it on the remote ledger and retrying in {} ms.", status, delay);
+        Thread.sleep(delay);
+      }
+
+    } catch (IOException | GitAPIException e) {
+      throw new NonSnapshotPluginException("Failed to record version updates!", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new NonSnapshotPluginException("Interrupted while recording version updates!", e);
+    }
+  }
+
+  @Override
+  public String findVersionUpdateCommit(String groupId, String artifactId, String version) {
+    if (this.git == null) {
+      return null;
+    }
+    try {
+      VersionLedger.Entry entry = readVersionLedger().findEntry(groupId, artifactId, version);
+      return entry != null ? entry.getCommitId().name() : null;
+    } catch (IOException | GitAPIException e) {
+      throw new NonSnapshotPluginException("Failed to read the version ledger!", e);
+    }
+  }
+
+  /**
+   * Read the version ledger. If pushing is enabled the ledger of the remote is fetched first (once per run),
+   * so a fresh clone sees the published version updates.
+   */
+  private VersionLedger readVersionLedger() throws IOException, GitAPIException {
+    if (this.doPush && !this.versionLedgerFetched) {
+      fetchVersionLedger();
+      this.versionLedgerFetched = true;
+    }
+    return VersionLedger.read(this.git.getRepository());
+  }
+
+  /**
+   * Replace the local version ledger by the one of the remote, if the remote has one. The remote ledger is the
+   * authoritative one: Local entries which were never published are dropped, the ledger is only an optimization
+   * and modules missing in it are checked via the history.
+   */
+  private void fetchVersionLedger() throws GitAPIException {
+    String remote = getRemoteName();
+    boolean remoteLedgerExists = false;
+    for (Ref ref : this.git.lsRemote().setRemote(remote).setCredentialsProvider(this.credentialsProvider).call()) {
+      if (VersionLedger.LEDGER_REF.equals(ref.getName())) {
+        remoteLedgerExists = true;
+      }
+    }
+    if (!remoteLedgerExists) {
+      LOG.debug("Git: No version ledger on {} yet", remote);
+      return;
+    }
+
+    LOG.debug("Git: Fetching the version ledger from {}", remote);
+    this.git
+        .fetch()
+        .setRemote(remote)
+        .setRefSpecs(new RefSpec("+" + VersionLedger.LEDGER_REF + ":" + VersionLedger.LEDGER_REF))
+        .setCredentialsProvider(this.credentialsProvider)
+        .call();
+  }
+
+  private String getRemoteName() {
+    Repository repository = this.git.getRepository();
+    try {
+      BranchConfig branchConfig = new BranchConfig(repository.getConfig(), repository.getBranch());
+      return branchConfig.getRemote() != null ? branchConfig.getRemote() : Constants.DEFAULT_REMOTE_NAME;
+    } catch (IOException e) {
+      throw new NonSnapshotPluginException("Failed to determine the current branch!", e);
+    }
+  }
+
+  /**
+   * The counter of each module is a blob with the last reserved build number, referenced by
+   * refs/nonsnapshot/counters/&lt;groupId&gt;/&lt;artifactId&gt;. A number is reserved by a compare-and-swap
+   * of that ref, which is retried with the new value if another run was faster.
+   * <br/>
+   * If pushing is enabled and the branch has a remote, the counter of the remote is the one which counts (so clones
+   * never hand out the same number): it is fetched, and the new value is pushed with the fetched one as expected old
+   * value. A rejected push is retried with the new remote value. Otherwise the numbers are only unique per clone.
+   */
+  @Override
+  public int allocateBuildNumber(String groupId, String artifactId, int minimum) {
+    if (this.git == null) {
+      return minimum;
+    }
+
+    Repository repository = this.git.getRepository();
+    String refName = BUILD_NUMBER_COUNTER_REF_PREFIX + groupId + "/" + artifactId;
+    if (this.doPush && hasRemote()) {
+      return allocateSharedBuildNumber(refName, groupId, artifactId, minimum);
+    }
+
+    try (ObjectInserter inserter = repository.newObjectInserter();
+         ObjectReader reader = repository.newObjectReader()) {
+      for (int attempt = 1; attempt <= MAX_BUILD_NUMBER_ALLOCATION_ATTEMPTS; attempt++) {
+        Ref counterRef = repository.exactRef(refName);
+        ObjectId oldId = counterRef != null && counterRef.getObjectId() != null ? counterRef.getObjectId() : ObjectId.zeroId();
+
+        int buildNumber = Math.max(readLastBuildNumber(reader, counterRef) + 1, minimum);
+        ObjectId newId = inserter.insert(Constants.OBJ_BLOB, Constants.encode(buildNumber + "\n"));
+        inserter.flush();
+
+        RefUpdate refUpdate = repository.updateRef(refName);
+        refUpdate.setExpectedOldObjectId(oldId);
+        refUpdate.setNewObjectId(newId);
+        refUpdate.setForceUpdate(true);
+        refUpdate.disableRefLog();
+        RefUpdate.Result result = refUpdate.update();
+
+        if (result == RefUpdate.Result.NEW || result == RefUpdate.Result.FORCED) {
+          LOG.debug("Reserved build number {} for {}:{}", new Object[]{buildNumber, groupId, artifactId});
+          return buildNumber;
+        }
+        if (result != RefUpdate.Result.LOCK_FAILURE) {
+          throw new NonSnapshotPluginException("Failed to update build number counter " + refName + ": " + result);
+        }
+        LOG.debug("Build number counter {} was updated concurrently ({}), retrying", refName, result);
+        // The cached loose ref may still hold the value we lost against
+        repository.getRefDatabase().refresh();
+      }
+
+    } catch (IOException | NumberFormatException e) {
+      throw new NonSnapshotPluginException("Failed to allocate build number for " + groupId + ":" + artifactId, e);
+    }
+
+    throw new NonSnapshotPluginException("Failed to allocate build number for " + groupId + ":" + artifactId
+        + " after " + MAX_BUILD_NUMBER_ALLOCATION_ATTEMPTS + " attempts");
+  }
+
+  /**
+   * Reserve the next build number with a compare-and-swap of the counter ref on the remote.
+   */
+  private int allocateSharedBuildNumber(String refName, String groupId, String artifactId, int minimum) {
+    Repository repository = this.git.getRepository();
+    String remote = getRemoteName();
+
+    try (ObjectInserter inserter = repository.newObjectInserter();
+         ObjectReader reader = repository.newObjectReader()) {
+      for (int attempt = 0; ; attempt++) {
+        int buildNumber = 0;
+        ObjectId newId = null;
+        RemoteRefUpdate.Status status;
+        try {
+          ObjectId remoteId = fetchBuildNumberCounter(refName);
+          int lastBuildNumber = remoteId != null ? Integer.parseInt(RawParseUtils.decode(reader.open(remoteId).getBytes()).trim()) : 0;
+
+          buildNumber = Math.max(lastBuildNumber + 1, minimum);
+          newId = inserter.insert(Constants.OBJ_BLOB, Constants.encode(buildNumber + "\n"));
+          inserter.flush();
+
+          try (Transport transport = Transport.open(repository, remote)) {
+            transport.setCredentialsProvider(this.credentialsProvider);
+            RemoteRefUpdate remoteRefUpdate = new RemoteRefUpdate(repository, null, newId, refName, true, null,
+                remoteId != null ? remoteId : ObjectId.zeroId());
+            transport.push(NullProgressMonitor.INSTANCE, Collections.singletonList(remoteRefUpdate));
+            status = remoteRefUpdate.getStatus();
+          }
+        } catch (TransportException | GitAPIException e) {
+          // Concurrent transfers of the same counter value may collide (e.g. on the pack lock)
+          if (attempt >= this.pushRetries) {
+            throw e;
+          }
+          LOG.debug("Transfer of build number counter {} failed: {}", refName, e.getMessage());
+          status = RemoteRefUpdate.Status.REJECTED_OTHER_REASON;
+        }
+
+        if (status == RemoteRefUpdate.Status.OK) {
+          RefUpdate refUpdate = repository.updateRef(refName);
+          refUpdate.setNewObjectId(newId);
+          refUpdate.setForceUpdate(true);
+          refUpdate.disableRefLog();
+          refUpdate.update();
+          LOG.debug("Reserved build number {} for {}:{} on {}", new Object[]{buildNumber, groupId, artifactId, remote});
+          return buildNumber;
+        }
+        // UP_TO_DATE means that another run pushed the same number in between
+        if (status != RemoteRefUpdate.Status.REJECTED_REMOTE_CHANGED && status != RemoteRefUpdate.Status.REJECTED_NONFASTFORWARD
+            && status != RemoteRefUpdate.Status.REJECTED_OTHER_REASON && status != RemoteRefUpdate.Status.UP_TO_DATE) {
+          throw new NonSnapshotPluginException("Failed to push build number counter " + refName + ": " + status);
+        }
+        if (attempt >= this.pushRetries) {
+          throw new NonSnapshotPluginException("Push of build number counter " + refName + " rejected after " + (attempt + 1) + " attempts: " + status);
+        }
+
+        long delay = this.pushRetryDelay << attempt;
+        LOG.debug("Build number counter {} was updated on {} concurrently ({}), retrying in {} ms", new Object[]{refName, remote, status, delay});
+        Thread.sleep(delay);
+      }
+
+    } catch (IOException | GitAPIException | URISyntaxException | NumberFormatException e) {
+      throw new NonSnapshotPluginException("Failed to allocate build number for " + groupId + ":" + artifactId, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new NonSnapshotPluginException("Interrupted while allocating build number for " + groupId + ":" + artifactId, e);
+    }
+  }
+
+  /**
+   * Replace the local counter by the one of the remote, if the remote has one.
+   *
+   * @return the object id of the remote counter or null
+   */
+  private ObjectId fetchBuildNumberCounter(String refName) throws GitAPIException {
+    String remote = getRemoteName();
+    ObjectId remoteId = null;
+    for (Ref ref : this.git.lsRemote().setRemote(remote).setCredentialsProvider(this.credentialsProvider).call()) {
+      if (refName.equals(ref.getName())) {
+        remoteId = ref.getObjectId();
+      }
+    }
+    if (remoteId == null) {
+      LOG.debug("Git: No build number counter {} on {} yet", refName, remote);
+      return null;
+    }
+
+    this.git
+        .fetch()
+        .setRemote(remote)
+        .setRefSpecs(new RefSpec("+" + refName + ":" + refName))
+        .setCredentialsProvider(this.credentialsProvider)
+        .call();
+    return remoteId;
+  }
+
+  private boolean hasRemote() {
+    return this.git.getRepository().getConfig().getSubsections(ConfigConstants.CONFIG_REMOTE_SECTION).contains(getRemoteName());
+  }
+
+  /**
+   * If build numbers are shared via the remote, the counter of the remote is fetched first.
+   */
+  @Override
+  public int peekBuildNumber(String groupId, String artifactId, int minimum) {
+    if (this.git == null) {
+      return minimum;
+    }
+
+    Repository repository = this.git.getRepository();
+    String refName = BUILD_NUMBER_COUNTER_REF_PREFIX + groupId + "/" + artifactId;
+    try (ObjectReader reader = repository.newObjectReader()) {
+      if (this.doPush && hasRemote()) {
+        ObjectId remoteId = fetchBuildNumberCounter(refName);
+        int lastBuildNumber = remoteId != null ? Integer.parseInt(RawParseUtils.decode(reader.open(remoteId).getBytes()).trim()) : 0;
+        return Math.max(lastBuildNumber + 1, minimum);
+      }
+      Ref counterRef = repository.exactRef(refName);
+      return Math.max(readLastBuildNumber(reader, counterRef) + 1, minimum);
+    } catch (IOException | GitAPIException | NumberFormatException e) {
+      throw new NonSnapshotPluginException("Failed to read build number counter for " + groupId + ":" + artifactId, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (this.git != null) {
+      this.git.close();
+      this.git = null;
+    }
+  }
+
+  private static int readLastBuildNumber(ObjectReader reader, Ref counterRef) throws IOException {
+    if (counterRef == null || counterRef.getObjectId() == null) {
+      return 0;
+    }
+    return Integer.parseInt(RawParseUtils.decode(reader.open(counterRef.getObjectId()).getBytes()).trim());
+  }
 
   @Override
   public void init(File baseDir, String scmUser, String scmPassword, Properties properties) {
@@ -198,6 +1588,39 @@ public class ScmHandlerGitImpl implements ScmHandler {
         this.doPush = false;
         LOG.info("GIT push is disabled");
       }
+      if (properties != null && "TREE_ID".equals(properties.getProperty("gitChangeDetection"))) {
+        this.treeIdChangeDetection = true;
+        LOG.info("Using tree id comparison for change detection");
+      }
+      if (properties != null && "true".equals(properties.getProperty("gitFirstParent"))) {
+        this.firstParent = true;
+        LOG.info("Following only the first parent of merge commits");
+      }
+      if (properties != null && "true".equals(properties.getProperty("gitVersionLedger"))) {
+        this.versionLedger = true;
+        LOG.info("Using the version ledger {}", VersionLedger.LEDGER_REF);
+      }
+      if (properties != null && properties.getProperty("gitShallowPolicy") != null) {
+        this.shallowPolicy = properties.getProperty("gitShallowPolicy");
+      }
+      if (properties != null && (properties.getProperty("gitIgnoredPaths") != null || properties.getProperty("gitIgnoredAuthors") != null)) {
+        this.changeRelevance = new ChangeRelevance(
+            splitLines(properties.getProperty("gitIgnoredPaths")), splitLines(properties.getProperty("gitIgnoredAuthors")));
+        LOG.info("Change detection ignores: {}", this.changeRelevance.getFingerprint());
+      }
+      if (properties != null && properties.getProperty("gitPushRetries") != null) {
+        this.pushRetries = Integer.parseInt(properties.getProperty("gitPushRetries"));
+      }
+      if (properties != null && properties.getProperty("gitPushRetryDelay") != null) {
+        this.pushRetryDelay = Long.parseLong(properties.getProperty("gitPushRetryDelay"));
+      }
+      if (properties != null && properties.getProperty("gitThreads") != null && Integer.parseInt(properties.getProperty("gitThreads")) > 0) {
+        this.threads = Integer.parseInt(properties.getProperty("gitThreads"));
+      }
+      if (properties != null && properties.getProperty("gitChangeStateFile") != null) {
+        this.changeStateFile = new File(properties.getProperty("gitChangeStateFile"));
+        LOG.info("Incremental change detection enabled, state file: {}", this.changeStateFile.getAbsolutePath());
+      }
 
     } catch (Exception e) {
       LOG.error("Project seems not be within a GIT repository!", e);
@@ -217,6 +1640,37 @@ public class ScmHandlerGitImpl implements ScmHandler {
     return null;
   }
 
+  static List<String> splitLines(String value) {
+    List<String> lines = new ArrayList<>();
+    if (value != null) {
+      for (String line : value.split("\n")) {
+        if (!line.trim().isEmpty()) {
+          lines.add(line.trim());
+        }
+      }
+    }
+    return lines;
+  }
+
+  File getBaseDir() {
+    return baseDir;
+  }
+
+  boolean isFirstParent() {
+    return firstParent;
+  }
+
+  ChangeRelevance getChangeRelevance() {
+    return changeRelevance;
+  }
+
+  /**
+   * The settings which influence the result of the change detection. A persisted state of other settings is ignored.
+   */
+  private String getChangeDetectionSettings() {
+    return this.changeRelevance.getFingerprint() + ";firstParent=" + this.firstParent;
+  }
+
   private File findGitRepo(File baseDir) {
     File dir = baseDir;
     do {
@@ -229,6 +1683,10 @@ public class ScmHandlerGitImpl implements ScmHandler {
     return null;
   }
 
+  private interface PathCheck {
+    boolean isChanged(RevWalk walk, String path) throws IOException;
+  }
+
   private static class UsernamePasswordAndPassphraseCredentialProvider extends CredentialsProvider {
 
     private String username;
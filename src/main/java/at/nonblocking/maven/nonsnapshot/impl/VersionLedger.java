@@ -0,0 +1,286 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.util.RawParseUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only ledger of the version updates, mapping each module version to the commit which produced it.
+ * <br/>
+ * The ledger is a commit chain on {@link #LEDGER_REF} (one commit per version update commit). Its tree contains
+ * a blob per module at &lt;groupId&gt;/&lt;artifactId&gt; with a line
+ * "&lt;version&gt; &lt;commit id&gt; @&lt;sequence&gt; &lt;POM path&gt;" per version update, so a lookup only reads the
+ * ledger tree and never walks the project history. The sequence is the number of the ledger commit (kept in the
+ * blob {@link #SEQUENCE_PATH}), it orders the entries of different modules, e.g. after an artifactId was renamed.
+ * Lines written before the sequence was introduced have no sequence and count as older than all others.
+ */
+class VersionLedger {
+
+  static final String LEDGER_REF = "refs/nonsnapshot/ledger";
+
+  private static final String SEQUENCE_PATH = "sequence";
+  private static final String SEQUENCE_PREFIX = "@";
+  private static final int MAX_APPEND_ATTEMPTS = 100;
+
+  private final Map<String, List<Entry>> entriesByArtifact = new HashMap<>();
+  private final Map<String, Entry> lastEntriesByPomPath = new HashMap<>();
+
+  private VersionLedger() {
+  }
+
+  static VersionLedger read(Repository repository) throws IOException {
+    VersionLedger ledger = new VersionLedger();
+    Ref ledgerRef = repository.exactRef(LEDGER_REF);
+    if (ledgerRef == null) {
+      return ledger;
+    }
+
+    try (RevWalk walk = new RevWalk(repository);
+         TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+      treeWalk.setRecursive(true);
+      treeWalk.addTree(walk.parseCommit(ledgerRef.getObjectId()).getTree());
+      while (treeWalk.next()) {
+        String path = treeWalk.getPathString();
+        int separator = path.lastIndexOf('/');
+        if (separator == -1) {
+          continue;
+        }
+        String groupId = path.substring(0, separator).replace('/', '.');
+        String artifactId = path.substring(separator + 1);
+        byte[] content = walk.getObjectReader().open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getBytes();
+        for (String line : RawParseUtils.decode(content).split("\n")) {
+          String[] fields = line.split(" ", 3);
+          if (fields.length != 3 || !ObjectId.isId(fields[1])) {
+            continue;
+          }
+          long sequence = 0;
+          String pomPath = fields[2];
+          if (pomPath.startsWith(SEQUENCE_PREFIX) && pomPath.indexOf(' ') != -1) {
+            sequence = Long.parseLong(pomPath.substring(SEQUENCE_PREFIX.length(), pomPath.indexOf(' ')));
+            pomPath = pomPath.substring(pomPath.indexOf(' ') + 1);
+          }
+          ledger.add(new Entry(groupId, artifactId, fields[0], ObjectId.fromString(fields[1]), pomPath, sequence));
+        }
+      }
+    }
+
+    return ledger;
+  }
+
+  private void add(Entry entry) {
+    String key = entry.getGroupId() + ":" + entry.getArtifactId();
+    List<Entry> entries = this.entriesByArtifact.get(key);
+    if (entries == null) {
+      entries = new ArrayList<>();
+      this.entriesByArtifact.put(key, entries);
+    }
+    entries.add(entry);
+
+    // The entries of one module are read in append order, the ones of different modules in tree order
+    Entry lastEntry = this.lastEntriesByPomPath.get(entry.getPomPath());
+    if (lastEntry == null || entry.getSequence() >= lastEntry.getSequence()) {
+      this.lastEntriesByPomPath.put(entry.getPomPath(), entry);
+    }
+  }
+
+  /**
+   * Find the version update of given module version.
+   *
+   * @return Entry or null
+   */
+  Entry findEntry(String groupId, String artifactId, String version) {
+    List<Entry> entries = this.entriesByArtifact.get(groupId + ":" + artifactId);
+    if (entries != null) {
+      for (int i = entries.size() - 1; i >= 0; i--) {
+        if (entries.get(i).getVersion().equals(version)) {
+          return entries.get(i);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Find the most recent version update of the module with given (repository relative) POM path.
+   *
+   * @return Entry or null
+   */
+  Entry getLastEntry(String pomPath) {
+    return this.lastEntriesByPomPath.get(pomPath);
+  }
+
+  /**
+   * Append the given entries with a new ledger commit. The ledger ref is updated with a compare-and-swap,
+   * which is retried if another run appended concurrently.
+   */
+  static void append(Repository repository, List<Entry> entries) throws IOException {
+    try (ObjectInserter inserter = repository.newObjectInserter();
+         ObjectReader reader = repository.newObjectReader();
+         RevWalk walk = new RevWalk(reader)) {
+      for (int attempt = 1; attempt <= MAX_APPEND_ATTEMPTS; attempt++) {
+        Ref ledgerRef = repository.exactRef(LEDGER_REF);
+        RevCommit ledgerCommit = ledgerRef != null ? walk.parseCommit(ledgerRef.getObjectId()) : null;
+
+        DirCache ledgerTree = DirCache.newInCore();
+        if (ledgerCommit != null) {
+          DirCacheBuilder builder = ledgerTree.builder();
+          builder.addTree(new byte[0], DirCacheEntry.STAGE_0, reader, ledgerCommit.getTree());
+          builder.finish();
+        }
+
+        DirCacheEntry sequenceEntry = ledgerTree.getEntry(SEQUENCE_PATH);
+        long sequence = sequenceEntry != null
+            ? Long.parseLong(RawParseUtils.decode(reader.open(sequenceEntry.getObjectId(), Constants.OBJ_BLOB).getBytes()).trim()) + 1 : 1;
+        Map<String, StringBuilder> newLines = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+          String path = entry.getGroupId().replace('.', '/') + "/" + entry.getArtifactId();
+          StringBuilder lines = newLines.get(path);
+          if (lines == null) {
+            lines = new StringBuilder();
+            newLines.put(path, lines);
+          }
+          lines.append(entry.getVersion()).append(' ').append(entry.getCommitId().name()).append(' ')
+              .append(SEQUENCE_PREFIX).append(sequence).append(' ').append(entry.getPomPath()).append('\n');
+        }
+
+        DirCacheEditor editor = ledgerTree.editor();
+        final ObjectId sequenceId = inserter.insert(Constants.OBJ_BLOB, Constants.encode(sequence + "\n"));
+        editor.add(new DirCacheEditor.PathEdit(SEQUENCE_PATH) {
+          @Override
+          public void apply(DirCacheEntry entry) {
+            entry.setFileMode(FileMode.REGULAR_FILE);
+            entry.setObjectId(sequenceId);
+          }
+        });
+        for (Map.Entry<String, StringBuilder> lines : newLines.entrySet()) {
+          DirCacheEntry existing = ledgerTree.getEntry(lines.getKey());
+          byte[] oldContent = existing != null ? reader.open(existing.getObjectId(), Constants.OBJ_BLOB).getBytes() : new byte[0];
+          byte[] appended = Constants.encode(lines.getValue().toString());
+          byte[] newContent = new byte[oldContent.length + appended.length];
+          System.arraycopy(oldContent, 0, newContent, 0, oldContent.length);
+          System.arraycopy(appended, 0, newContent, oldContent.length, appended.length);
+          final ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, newContent);
+          editor.add(new DirCacheEditor.PathEdit(lines.getKey()) {
+            @Override
+            public void apply(DirCacheEntry entry) {
+              entry.setFileMode(FileMode.REGULAR_FILE);
+              entry.setObjectId(blobId);
+            }
+          });
+        }
+        editor.finish();
+
+        PersonIdent ident = new PersonIdent(repository);
+        CommitBuilder commitBuilder = new CommitBuilder();
+        commitBuilder.setTreeId(ledgerTree.writeTree(inserter));
+        if (ledgerCommit != null) {
+          commitBuilder.setParentId(ledgerCommit);
+        }
+        commitBuilder.setAuthor(ident);
+        commitBuilder.setCommitter(ident);
+        commitBuilder.setMessage("Version ledger: " + entries.size() + " entries added\n");
+        ObjectId newLedgerCommit = inserter.insert(commitBuilder);
+        inserter.flush();
+
+        RefUpdate refUpdate = repository.updateRef(LEDGER_REF);
+        refUpdate.setExpectedOldObjectId(ledgerCommit != null ? ledgerCommit : ObjectId.zeroId());
+        refUpdate.setNewObjectId(newLedgerCommit);
+        refUpdate.disableRefLog();
+        RefUpdate.Result result = refUpdate.update();
+        if (result == RefUpdate.Result.NEW || result == RefUpdate.Result.FAST_FORWARD) {
+          return;
+        }
+      }
+    }
+
+    throw new NonSnapshotPluginException("Failed to update the version ledger after " + MAX_APPEND_ATTEMPTS + " attempts");
+  }
+
+  static class Entry {
+
+    private final String groupId;
+    private final String artifactId;
+    private final String version;
+    private final ObjectId commitId;
+    private final String pomPath;
+    private final long sequence;
+
+    Entry(String groupId, String artifactId, String version, ObjectId commitId, String pomPath) {
+      this(groupId, artifactId, version, commitId, pomPath, 0);
+    }
+
+    private Entry(String groupId, String artifactId, String version, ObjectId commitId, String pomPath, long sequence) {
+      this.groupId = groupId;
+      this.artifactId = artifactId;
+      this.version = version;
+      this.commitId = commitId;
+      this.pomPath = pomPath;
+      this.sequence = sequence;
+    }
+
+    String getGroupId() {
+      return groupId;
+    }
+
+    String getArtifactId() {
+      return artifactId;
+    }
+
+    String getVersion() {
+      return version;
+    }
+
+    ObjectId getCommitId() {
+      return commitId;
+    }
+
+    String getPomPath() {
+      return pomPath;
+    }
+
+    /**
+     * The number of the ledger commit which added this entry (0 if unknown).
+     */
+    long getSequence() {
+      return sequence;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import at.nonblocking.maven.nonsnapshot.ScmHandler;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevFlag;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.util.RawParseUtils;
+
+/**
+ * Recognizes the version update commits created by this plugin.
+ * <br/>
+ * The check works on the raw commit buffer, so the message is never decoded: the message prefix is matched right
+ * after the headers, and only if it doesn't match the last paragraph (where git puts the trailers) is searched for
+ * the trailer. Without a flag only version update commits are included, with a flag all commits are included
+ * and the version updates are marked with it.
+ * <br/>
+ * The filter requires the commit body on purpose: JGit parses only the tree, the parents and the commit time
+ * without it, and neither the message nor the committer identity can be checked. Walks which don't retain the
+ * body still drop the buffer right after the filter.
+ */
+class VersionUpdateRevFilter extends RevFilter {
+
+  private static final byte[] MESSAGE_PREFIX = Constants.encode(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX);
+  private static final byte[] TRAILER = Constants.encode("\n" + ScmHandler.NONSNAPSHOT_COMMIT_TRAILER);
+
+  private final RevFlag versionUpdateFlag;
+
+  VersionUpdateRevFilter() {
+    this(null);
+  }
+
+  VersionUpdateRevFilter(RevFlag versionUpdateFlag) {
+    this.versionUpdateFlag = versionUpdateFlag;
+  }
+
+  static boolean isVersionUpdate(byte[] rawCommit) {
+    int messageStart = RawParseUtils.commitMessage(rawCommit, 0);
+    if (messageStart < 0) {
+      return false;
+    }
+    return RawParseUtils.match(rawCommit, messageStart, MESSAGE_PREFIX) != -1
+        || contains(rawCommit, lastParagraph(rawCommit, messageStart), TRAILER);
+  }
+
+  static boolean isVersionUpdate(String message) {
+    if (message.startsWith(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX)) {
+      return true;
+    }
+    int end = message.length();
+    while (end > 0 && message.charAt(end - 1) == '\n') {
+      end--;
+    }
+    int paragraphStart = message.lastIndexOf("\n\n", end - 1);
+    return message.indexOf("\n" + ScmHandler.NONSNAPSHOT_COMMIT_TRAILER, paragraphStart + 1) != -1;
+  }
+
+  /**
+   * The position of the line feed which starts the last paragraph of the message (or the message start).
+   */
+  private static int lastParagraph(byte[] buffer, int messageStart) {
+    int end = buffer.length;
+    while (end > messageStart && buffer[end - 1] == '\n') {
+      end--;
+    }
+    for (int i = end - 1; i > messageStart; i--) {
+      if (buffer[i] == '\n' && buffer[i - 1] == '\n') {
+        return i;
+      }
+    }
+    return messageStart;
+  }
+
+  private static boolean contains(byte[] buffer, int start, byte[] pattern) {
+    for (int i = start; i <= buffer.length - pattern.length; i++) {
+      if (RawParseUtils.match(buffer, i, pattern) != -1) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public boolean include(RevWalk walker, RevCommit commit) {
+    boolean versionUpdate = isVersionUpdate(commit.getRawBuffer());
+    if (this.versionUpdateFlag == null) {
+      return versionUpdate;
+    }
+    if (versionUpdate) {
+      commit.add(this.versionUpdateFlag);
+    }
+    return true;
+  }
+
+  @Override
+  public boolean requiresCommitBody() {
+    return true;
+  }
+
+  @Override
+  public RevFilter clone() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "VERSION_UPDATE";
+  }
+}
@@ -30,9 +30,11 @@ public class MavenModule extends MavenArtifact {
 
   private boolean insertVersionTag;
   private int versionLocation;
+  private int versionColumn = -1;
 
   private MavenArtifact parent;
   private int parentVersionLocation;
+  private int parentVersionColumn = -1;
 
   private List<MavenModule> children = new ArrayList<MavenModule>();
 
@@ -71,6 +73,17 @@ public class MavenModule extends MavenArtifact {
     this.versionLocation = versionLocation;
   }
 
+  /**
+   * The column of the version value (the first character after the start tag) in the POM file, -1 if unknown.
+   */
+  public int getVersionColumn() {
+    return versionColumn;
+  }
+
+  public void setVersionColumn(int versionColumn) {
+    this.versionColumn = versionColumn;
+  }
+
   public int getParentVersionLocation() {
     return parentVersionLocation;
   }
@@ -79,6 +92,14 @@ public class MavenModule extends MavenArtifact {
     this.parentVersionLocation = parentVersionLocation;
   }
 
+  public int getParentVersionColumn() {
+    return parentVersionColumn;
+  }
+
+  public void setParentVersionColumn(int parentVersionColumn) {
+    this.parentVersionColumn = parentVersionColumn;
+  }
+
   public MavenArtifact getParent() {
     return parent;
   }
@@ -24,6 +24,7 @@ package at.nonblocking.maven.nonsnapshot.model;
 public class MavenModuleDependency {
 
   private int versionLocation;
+  private int versionColumn = -1;
   private MavenArtifact artifact;
   private String scope = null;
 
@@ -46,6 +47,17 @@ public class MavenModuleDependency {
     this.versionLocation = versionLocation;
   }
 
+  /**
+   * The column of the version value (the first character after the start tag) in the POM file, -1 if unknown.
+   */
+  public int getVersionColumn() {
+    return versionColumn;
+  }
+
+  public void setVersionColumn(int versionColumn) {
+    this.versionColumn = versionColumn;
+  }
+
   public MavenArtifact getArtifact() {
     return artifact;
   }
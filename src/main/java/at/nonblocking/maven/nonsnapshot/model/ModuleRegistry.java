@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package at.nonblocking.maven.nonsnapshot.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the Maven modules in the workspace by groupId:artifactId, groupId:artifactId:version and POM file.
+ * <br/>
+ * Built once per run, so resolving a parent or dependency reference doesn't scan the whole module list.
+ * The keys are taken when a module is added. If several modules have the same key the first one wins.
+ */
+public class ModuleRegistry {
+
+  private final List<MavenModule> modules = new ArrayList<>();
+  private final Map<String, MavenModule> modulesByGroupAndArtifactId = new HashMap<>();
+  private final Map<String, MavenModule> modulesByGav = new HashMap<>();
+  private final Map<File, MavenModule> modulesByPomFile = new HashMap<>();
+
+  public ModuleRegistry() {
+  }
+
+  public ModuleRegistry(Collection<MavenModule> modules) {
+    for (MavenModule module : modules) {
+      add(module);
+    }
+  }
+
+  public void add(MavenModule module) {
+    this.modules.add(module);
+    this.modulesByGroupAndArtifactId.putIfAbsent(key(module.getGroupId(), module.getArtifactId()), module);
+    this.modulesByGav.putIfAbsent(key(module.getGroupId(), module.getArtifactId(), module.getVersion()), module);
+    if (module.getPomFile() != null) {
+      this.modulesByPomFile.putIfAbsent(normalize(module.getPomFile()), module);
+    }
+  }
+
+  /**
+   * Find the module with given groupId and artifactId (in any version).
+   *
+   * @param groupId String
+   * @param artifactId String
+   * @return MavenModule or null
+   */
+  public MavenModule find(String groupId, String artifactId) {
+    return this.modulesByGroupAndArtifactId.get(key(groupId, artifactId));
+  }
+
+  /**
+   * Find the module with given groupId, artifactId and (current) version.
+   *
+   * @param groupId String
+   * @param artifactId String
+   * @param version String
+   * @return MavenModule or null
+   */
+  public MavenModule find(String groupId, String artifactId, String version) {
+    return this.modulesByGav.get(key(groupId, artifactId, version));
+  }
+
+  /**
+   * Find the module a reference (parent or dependency) points to.
+   *
+   * @param artifact MavenArtifact
+   * @return MavenModule or null
+   */
+  public MavenModule find(MavenArtifact artifact) {
+    return find(artifact.getGroupId(), artifact.getArtifactId());
+  }
+
+  /**
+   * Find the module of given POM file. The path is normalized but symbolic links are not resolved.
+   *
+   * @param pomFile File
+   * @return MavenModule or null
+   */
+  public MavenModule findByPomFile(File pomFile) {
+    return this.modulesByPomFile.get(normalize(pomFile));
+  }
+
+  public List<MavenModule> getModules() {
+    return Collections.unmodifiableList(this.modules);
+  }
+
+  public int size() {
+    return this.modules.size();
+  }
+
+  private static String key(String groupId, String artifactId) {
+    return groupId + ":" + artifactId;
+  }
+
+  private static String key(String groupId, String artifactId, String version) {
+    return groupId + ":" + artifactId + ":" + version;
+  }
+
+  private static File normalize(File file) {
+    return file.getAbsoluteFile().toPath().normalize().toFile();
+  }
+}
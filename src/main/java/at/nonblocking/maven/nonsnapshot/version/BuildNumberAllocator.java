@@ -0,0 +1,17 @@
+package at.nonblocking.maven.nonsnapshot.version;
+
+/**
+ * Reserves build numbers, so concurrent runs never hand out the same build number for a module.
+ */
+public interface BuildNumberAllocator {
+
+    /**
+     * Reserve the next build number of given module.
+     *
+     * @param groupId String
+     * @param artifactId String
+     * @param minimum the build number which would be used without allocation
+     * @return a build number which is at least the minimum and greater than all numbers reserved before
+     */
+    int allocateBuildNumber(String groupId, String artifactId, int minimum);
+}
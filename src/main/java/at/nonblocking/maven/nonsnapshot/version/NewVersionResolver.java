@@ -3,6 +3,7 @@ package at.nonblocking.maven.nonsnapshot.version;
 import static at.nonblocking.maven.nonsnapshot.version.VersionIncrementer.incrementBuildVersion;
 import static at.nonblocking.maven.nonsnapshot.version.VersionIncrementer.incrementMinorVersion;
 import static at.nonblocking.maven.nonsnapshot.version.VersionIncrementer.removeBranchName;
+import static at.nonblocking.maven.nonsnapshot.version.VersionIncrementer.withBuildVersion;
 
 /**
  * Form string with new version of module.
@@ -14,8 +15,15 @@ public class NewVersionResolver {
     private final boolean useSnapshotVersion;
     private final String replaceSpecialSymbolsInVersionBy;
     private final VersionParser parser;
+    private final BuildNumberAllocator buildNumberAllocator;
 
     public NewVersionResolver(boolean appendBranchNameToVersion, boolean useSnapshotVersion, String incrementVersionPattern, String replaceSpecialSymbolsInVersionBy) {
+        this(appendBranchNameToVersion, useSnapshotVersion, incrementVersionPattern, replaceSpecialSymbolsInVersionBy, null);
+    }
+
+    public NewVersionResolver(boolean appendBranchNameToVersion, boolean useSnapshotVersion, String incrementVersionPattern, String replaceSpecialSymbolsInVersionBy,
+                              BuildNumberAllocator buildNumberAllocator) {
+        this.buildNumberAllocator = buildNumberAllocator;
         this.appendBranchNameToVersion = appendBranchNameToVersion;
         this.useSnapshotVersion = useSnapshotVersion;
         this.parser = new VersionParser(incrementVersionPattern);
@@ -23,6 +31,13 @@ public class NewVersionResolver {
     }
 
     public String resolveNewVersion(String currVersion, String branchName) {
+        return resolveNewVersion(null, null, currVersion, branchName);
+    }
+
+    /**
+     * Resolve the new version of given module. If a {@link BuildNumberAllocator} is set, the build number is reserved with it.
+     */
+    public String resolveNewVersion(String groupId, String artifactId, String currVersion, String branchName) {
         if (currVersion == null) {
             throw new IllegalArgumentException("Current version is null");
         }
@@ -35,6 +50,9 @@ public class NewVersionResolver {
             }
 
             Version newV = incrementBuildVersion(currV, branchName, useSnapshotVersion);
+            if (buildNumberAllocator != null && artifactId != null && newV.getBuildVersion() != null) {
+                newV = withBuildVersion(newV, buildNumberAllocator.allocateBuildNumber(groupId, artifactId, newV.getBuildVersion()));
+            }
             newVersion = VersionFormatter.formatWithBranch(newV);
             newVersion = replaceSpecialSymbols(newVersion);
         } else {
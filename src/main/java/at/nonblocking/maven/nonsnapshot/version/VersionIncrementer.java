@@ -50,4 +50,15 @@ class VersionIncrementer {
         );
     }
 
+    static Version withBuildVersion(Version version, int buildVersion) {
+        return new Version(
+                version.getMajorVersion(),
+                version.getMiddleVersion(),
+                version.getMinorVersion(),
+                version.getBranchSuffix(),
+                buildVersion,
+                version.getIsItSnapshot()
+        );
+    }
+
 }
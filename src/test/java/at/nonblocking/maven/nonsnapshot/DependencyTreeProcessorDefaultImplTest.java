@@ -2,7 +2,9 @@ package at.nonblocking.maven.nonsnapshot;
 
 import static junit.framework.Assert.*;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.BeforeClass;
@@ -13,6 +15,7 @@ import at.nonblocking.maven.nonsnapshot.impl.DependencyTreeProcessorDefaultImpl;
 import at.nonblocking.maven.nonsnapshot.model.MavenArtifact;
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
 import at.nonblocking.maven.nonsnapshot.model.MavenModuleDependency;
+import at.nonblocking.maven.nonsnapshot.model.ModuleRegistry;
 
 public class DependencyTreeProcessorDefaultImplTest {
 
@@ -53,6 +56,36 @@ public class DependencyTreeProcessorDefaultImplTest {
     dependencyTreeProcessor.printMavenModuleTree(wsArtifact1, System.out);
   }
 
+  @Test
+  public void testBuildDependencyTreeWithModuleRegistry() {
+    MavenModule wsArtifact1 = new MavenModule(new File("target/registry/pom.xml"), "at.nonblocking.at", "parent", "1.0.0");
+    MavenModule wsArtifact2 = new MavenModule(new File("target/registry/test1/pom.xml"), "at.nonblocking.at", "test1", "1.0.0");
+    MavenModule wsArtifact3 = new MavenModule(new File("target/registry/test2/pom.xml"), "at.nonblocking.at", "test2", "1.0.0");
+
+    wsArtifact2.setParent(new MavenArtifact("at.nonblocking.at", "parent", "1.0.0"));
+    wsArtifact2.getDependencies().add(new MavenModuleDependency(0, new MavenArtifact("at.nonblocking.at", "test2", "0.9.0")));
+    wsArtifact2.getDependencies().add(new MavenModuleDependency(0, new MavenArtifact("junit", "junit", "4.7")));
+    wsArtifact3.setParent(new MavenArtifact("at.nonblocking.at", "parent", "1.0.0"));
+
+    ModuleRegistry moduleRegistry = new ModuleRegistry(Arrays.asList(wsArtifact1, wsArtifact2, wsArtifact3));
+
+    assertSame(wsArtifact2, moduleRegistry.find("at.nonblocking.at", "test1"));
+    assertSame(wsArtifact2, moduleRegistry.find("at.nonblocking.at", "test1", "1.0.0"));
+    assertNull(moduleRegistry.find("at.nonblocking.at", "test1", "0.9.0"));
+    assertSame(wsArtifact3, moduleRegistry.findByPomFile(new File("target/registry/test1/../test2/pom.xml")));
+    assertNull(moduleRegistry.find("junit", "junit"));
+
+    DependencyTreeProcessor dependencyTreeProcessor = new DependencyTreeProcessorDefaultImpl();
+
+    dependencyTreeProcessor.buildDependencyTree(moduleRegistry);
+
+    assertSame(wsArtifact1, wsArtifact2.getParent());
+    assertSame(wsArtifact1, wsArtifact3.getParent());
+    assertEquals(Arrays.asList(wsArtifact2, wsArtifact3), wsArtifact1.getChildren());
+    assertSame(wsArtifact3, wsArtifact2.getDependencies().get(0).getArtifact());
+    assertFalse(wsArtifact2.getDependencies().get(1).getArtifact() instanceof MavenModule);
+  }
+
   @Test
   public void testMarkAllArtifactsDirtyWithDirtyDependencies() {
     MavenModule wsArtifact1 = new MavenModule(null, "at.nonblocking.at", "test1", "1.0.0");
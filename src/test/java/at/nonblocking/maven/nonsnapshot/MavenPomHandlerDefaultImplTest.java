@@ -6,9 +6,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
+import org.apache.maven.model.InputSource;
 import org.apache.maven.model.Model;
 import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.model.io.xpp3.MavenXpp3ReaderEx;
 import org.codehaus.plexus.util.IOUtil;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -16,6 +20,7 @@ import org.slf4j.impl.StaticLoggerBinder;
 
 import at.nonblocking.maven.nonsnapshot.impl.MavenPomHandlerDefaultImpl;
 import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+import at.nonblocking.maven.nonsnapshot.model.MavenModuleDependency;
 import at.nonblocking.maven.nonsnapshot.ResourcesToolkit;
 
 public class MavenPomHandlerDefaultImplTest {
@@ -23,6 +28,7 @@ public class MavenPomHandlerDefaultImplTest {
   private final String testPom = new String("test-pom.xml");
   private final String testPomParent = new String("test-pom-parent.xml");
   private final String testPomNoVersion = new String("test-pom-noversion.xml");
+  private final String testPomFull = new String("test-pom-full.xml");
 
   @BeforeClass
   public static void setupLog() {
@@ -174,4 +180,128 @@ public class MavenPomHandlerDefaultImplTest {
     assertEquals("1.1.1-12345", pom.getVersion());
     assertEquals("5.0.1-555", pom.getDependencies().get(1).getVersion());
   }
+
+  @Test
+  public void testReadArtifactCached() throws Exception {
+    File pomFile = new File(ResourcesToolkit.GetPathToResourceInTarget(testPom));
+    IOUtil.copy(new FileReader(ResourcesToolkit.GetPathToResourceInResourcesDir(getClass(), testPom)), new FileOutputStream(pomFile));
+    pomFile.setLastModified(System.currentTimeMillis() - 60000);
+
+    MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+    MavenModule wsArtifact = pomHandler.readArtifact(pomFile);
+    MavenModule otherArtifact = pomHandler.readArtifact(pomFile);
+    assertNotSame(wsArtifact, otherArtifact);
+    assertEquals(wsArtifact.getArtifactId(), otherArtifact.getArtifactId());
+    assertEquals(wsArtifact.getVersion(), otherArtifact.getVersion());
+    assertSame(pomHandler.readModel(pomFile), pomHandler.readModel(pomFile));
+
+    otherArtifact.setDirty(true);
+    otherArtifact.setNewVersion("9.9.9");
+    assertFalse(pomHandler.readArtifact(pomFile).isDirty());
+    assertNull(pomHandler.readArtifact(pomFile).getNewVersion());
+
+    wsArtifact.setDirty(true);
+    wsArtifact.setNewVersion("1.1.1-12345");
+    pomHandler.updateArtifact(wsArtifact);
+
+    MavenModule updatedArtifact = pomHandler.readArtifact(pomFile);
+    assertNotSame(wsArtifact, updatedArtifact);
+    assertEquals("1.1.1-12345", updatedArtifact.getVersion());
+  }
+
+  @Test
+  public void testUpdateArtifactVersionsOnSameLine() throws Exception {
+    File pomFile = new File(ResourcesToolkit.GetPathToResourceInTarget("test-pom-sameline.xml"));
+    String pom = "<?xml version=\"1.0\"?>\r\n<project>\r\n"
+        + "  <groupId>at.nonblocking</groupId><artifactId>test1</artifactId><version>1.0.0</version>"
+        + "<dependencies><dependency><groupId>at.nonblocking</groupId><artifactId>test2</artifactId><version>1.0.0</version></dependency></dependencies>\r\n"
+        + "</project>\r\n";
+    Files.write(pomFile.toPath(), pom.getBytes(StandardCharsets.UTF_8));
+
+    MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+    MavenModule wsArtifact = pomHandler.readArtifact(pomFile);
+    wsArtifact.setDirty(true);
+    wsArtifact.setNewVersion("1.0.1");
+
+    MavenModule dependentArtifact = new MavenModule(null, "at.nonblocking", "test2", "1.0.0");
+    dependentArtifact.setDirty(true);
+    dependentArtifact.setNewVersion("2.0.0");
+    wsArtifact.getDependencies().get(0).setArtifact(dependentArtifact);
+
+    pomHandler.updateArtifact(wsArtifact);
+
+    assertEquals(pom.replace("test1</artifactId><version>1.0.0", "test1</artifactId><version>1.0.1")
+        .replace("test2</artifactId><version>1.0.0", "test2</artifactId><version>2.0.0"),
+        new String(Files.readAllBytes(pomFile.toPath()), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testUpdateArtifactUnchanged() throws Exception {
+    File pomFile = new File(ResourcesToolkit.GetPathToResourceInTarget(testPom));
+    IOUtil.copy(new FileReader(ResourcesToolkit.GetPathToResourceInResourcesDir(getClass(), testPom)), new FileOutputStream(pomFile));
+    long lastModified = System.currentTimeMillis() - 60000;
+    pomFile.setLastModified(lastModified);
+
+    MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+    MavenModule wsArtifact = pomHandler.readArtifact(pomFile);
+    wsArtifact.setDirty(true);
+    wsArtifact.setNewVersion(wsArtifact.getVersion());
+
+    pomHandler.updateArtifact(wsArtifact);
+
+    assertEquals(lastModified / 1000, pomFile.lastModified() / 1000);
+  }
+
+  @Test
+  public void testUpdateArtifactKeepsEncoding() throws Exception {
+    File pomFile = new File(ResourcesToolkit.GetPathToResourceInTarget("test-pom-utf16.xml"));
+    String pom = "\uFEFF<?xml version=\"1.0\" encoding=\"UTF-16\"?>\n<project>\n"
+        + "  <!-- \u00e4\u00f6\u00fc -->\n"
+        + "  <groupId>at.nonblocking</groupId>\n  <artifactId>test1</artifactId>\n  <version>1.0.0</version>\n"
+        + "</project>\n";
+    Files.write(pomFile.toPath(), pom.getBytes(StandardCharsets.UTF_16BE));
+
+    MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+    MavenModule wsArtifact = pomHandler.readArtifact(pomFile);
+    wsArtifact.setDirty(true);
+    wsArtifact.setNewVersion("1.0.1-\u00e4");
+
+    pomHandler.updateArtifact(wsArtifact);
+
+    assertEquals(pom.replace("1.0.0", "1.0.1-\u00e4"), new String(Files.readAllBytes(pomFile.toPath()), StandardCharsets.UTF_16BE));
+  }
+
+  @Test
+  public void testReadArtifactLikeMavenReader() throws Exception {
+    for (String resource : new String[]{testPom, testPomParent, testPomNoVersion, testPomFull}) {
+      File pomFile = new File(ResourcesToolkit.GetPathToResourceInResourcesDir(getClass(), resource));
+
+      MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+      Model mavenModel = new MavenXpp3ReaderEx().read(new FileInputStream(pomFile), false, new InputSource());
+      mavenModel.setPomFile(pomFile);
+
+      assertEquals(resource, describe(pomHandler.readArtifact(mavenModel)), describe(pomHandler.readArtifact(pomFile)));
+      assertEquals(resource, mavenModel.getPackaging(), pomHandler.readModel(pomFile).getPackaging());
+      assertEquals(resource, mavenModel.getModules(), pomHandler.readModel(pomFile).getModules());
+    }
+  }
+
+  private static String describe(MavenModule mavenModule) {
+    StringBuilder description = new StringBuilder();
+    description.append(mavenModule.getGroupId()).append(':').append(mavenModule.getArtifactId()).append(':').append(mavenModule.getVersion())
+        .append(" @").append(mavenModule.getVersionLocation()).append(" insert=").append(mavenModule.isInsertVersionTag()).append('\n');
+    if (mavenModule.getParent() != null) {
+      description.append("parent ").append(mavenModule.getParent()).append(" @").append(mavenModule.getParentVersionLocation()).append('\n');
+    }
+    for (MavenModuleDependency dependency : mavenModule.getDependencies()) {
+      description.append(dependency.getArtifact().getGroupId()).append(':').append(dependency.getArtifact().getArtifactId()).append(':')
+          .append(dependency.getArtifact().getType()).append(':').append(dependency.getArtifact().getVersion())
+          .append(" scope=").append(dependency.getScope()).append(" @").append(dependency.getVersionLocation()).append('\n');
+    }
+    return description.toString();
+  }
 }
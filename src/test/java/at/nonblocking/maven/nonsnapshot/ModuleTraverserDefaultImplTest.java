@@ -1,5 +1,7 @@
 package at.nonblocking.maven.nonsnapshot;
 
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import at.nonblocking.maven.nonsnapshot.impl.MavenPomHandlerDefaultImpl;
 import at.nonblocking.maven.nonsnapshot.impl.ModuleTraverserDefaultImpl;
 import at.nonblocking.maven.nonsnapshot.ResourcesToolkit;
 
@@ -11,6 +13,7 @@ import org.junit.Test;
 import static junit.framework.Assert.*;
 
 import java.io.File;
+import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.List;
 
@@ -25,7 +28,7 @@ public class ModuleTraverserDefaultImplTest {
 
     ModuleTraverser moduleTraverser = new ModuleTraverserDefaultImpl();
 
-    List<Model> mavenModels = moduleTraverser.findAllModules(mavenProject, null);
+    List<Model> mavenModels = moduleTraverser.findAllModules(mavenProject, null, new MavenPomHandlerDefaultImpl());
 
     assertNotNull(mavenModels);
     assertEquals(4, mavenModels.size());
@@ -45,7 +48,7 @@ public class ModuleTraverserDefaultImplTest {
 
     Profile activeProfile = new Profile();
     activeProfile.setId("foo");
-    List<Model> mavenModels = moduleTraverser.findAllModules(mavenProject, Arrays.asList(activeProfile));
+    List<Model> mavenModels = moduleTraverser.findAllModules(mavenProject, Arrays.asList(activeProfile), new MavenPomHandlerDefaultImpl());
 
     assertNotNull(mavenModels);
     assertEquals(5, mavenModels.size());
@@ -56,4 +59,24 @@ public class ModuleTraverserDefaultImplTest {
     assertEquals("project2", mavenModels.get(3).getArtifactId());
     assertEquals("module3", mavenModels.get(4).getArtifactId());
   }
+
+  @Test(expected = NonSnapshotPluginException.class)
+  public void readModulesMissingModuleTest() throws Exception {
+    File baseDir = new File("target/module-traverser/" + System.nanoTime()).getAbsoluteFile();
+    writePom(new File(baseDir, "pom.xml"), "<modules><module>module1</module><module>module2</module></modules>");
+    writePom(new File(baseDir, "module1/pom.xml"), "");
+
+    MavenProject mavenProject = new MavenProject();
+    mavenProject.setFile(new File(baseDir, "pom.xml"));
+
+    new ModuleTraverserDefaultImpl().findAllModules(mavenProject, null, new MavenPomHandlerDefaultImpl());
+  }
+
+  private static void writePom(File pomFile, String content) throws Exception {
+    pomFile.getParentFile().mkdirs();
+    try (PrintWriter writer = new PrintWriter(pomFile)) {
+      writer.write("<project><modelVersion>4.0.0</modelVersion><groupId>at.nonblocking</groupId><artifactId>"
+          + pomFile.getParentFile().getName() + "</artifactId><version>1.0.0</version>" + content + "</project>");
+    }
+  }
 }
@@ -12,6 +12,7 @@ import org.apache.maven.project.MavenProject;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.slf4j.impl.StaticLoggerBinder;
 
 public class NonSnapshotCommitMojoTest {
@@ -72,6 +73,7 @@ public class NonSnapshotCommitMojoTest {
     expectedMessageBuilder.append(" - ").append("test1").append("-").append("1.1.1").append("\n");
     expectedMessageBuilder.append(" - ").append("test2").append("-").append("2.2.2").append("\n");
     expectedMessageBuilder.append(" - ").append("test3").append("-").append("3.3.3").append("\n");
+    expectedMessageBuilder.append("\n").append(ScmHandler.NONSNAPSHOT_COMMIT_TRAILER).append("\n");
     verify(this.mockScmHandler).commitFiles(Arrays.asList(pom1, pom2, pom3, pom4), expectedMessageBuilder.toString());
 
     assertFalse(pomFilesToCommit.exists());
@@ -102,11 +104,34 @@ public class NonSnapshotCommitMojoTest {
     expectedMessageBuilder.append(" - ").append("test1").append("-").append("1.1.1").append("\n");
     expectedMessageBuilder.append(" - ").append("test2").append("-").append("2.2.2").append("\n");
     expectedMessageBuilder.append(" - ").append("test3").append("-").append("3.3.3").append("\n");
+    expectedMessageBuilder.append("\n").append(ScmHandler.NONSNAPSHOT_COMMIT_TRAILER).append("\n");
     verify(this.mockScmHandler).commitFiles(Arrays.asList(pom1, pom2, pom3), expectedMessageBuilder.toString());
 
     assertFalse(pomFilesToCommit.exists());
   }
 
+  @Test
+  public void testCommitWithTags() throws Exception {
+    File pomFilesToCommit = new File("target/nonSnapshotDirtyModules.txt");
+    File pom1 = new File("target/test1/pom.xml").getAbsoluteFile();
+    File pom2 = new File("target/test2/pom.xml").getAbsoluteFile();
+
+    PrintWriter writer = new PrintWriter(pomFilesToCommit);
+    writer.write("test1" + System.getProperty("line.separator"));
+    writer.write("test2" + System.getProperty("line.separator"));
+    writer.close();
+
+    when(this.mockMavenPomHandler.readArtifact(pom1)).thenReturn(new MavenModule(pom1, "at.nonblocking.tests", "test1", "1.1.1"));
+    when(this.mockMavenPomHandler.readArtifact(pom2)).thenReturn(new MavenModule(pom2, "at.nonblocking.tests", "test2", "2.2.2"));
+
+    this.nonSnapshotMojo.setTagVersions(true);
+    this.nonSnapshotMojo.execute();
+
+    InOrder inOrder = inOrder(this.mockScmHandler);
+    inOrder.verify(this.mockScmHandler).commitFiles(eq(Arrays.asList(pom1, pom2)), anyString());
+    inOrder.verify(this.mockScmHandler).createTags(Arrays.asList("test1-1.1.1", "test2-2.2.2"));
+  }
+
   @Test
   public void testDontFailOnCommitTrue() throws Exception {
     File pomFilesToCommit = new File("target/nonSnapshotDirtyModules.txt");
@@ -121,6 +146,7 @@ public class NonSnapshotCommitMojoTest {
     StringBuilder expectedMessageBuilder = new StringBuilder();
     expectedMessageBuilder.append(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX).append(" Version of 1 artifacts updated\n\nChanges:\n");
     expectedMessageBuilder.append(" - ").append("test1").append("-").append("1.1.1").append("\n");
+    expectedMessageBuilder.append("\n").append(ScmHandler.NONSNAPSHOT_COMMIT_TRAILER).append("\n");
     doThrow(new RuntimeException("test")).when(this.mockScmHandler).commitFiles(anyList(), eq(expectedMessageBuilder.toString()));
 
     this.nonSnapshotMojo.setDontFailOnCommit(true);
@@ -141,6 +167,7 @@ public class NonSnapshotCommitMojoTest {
     StringBuilder expectedMessageBuilder = new StringBuilder();
     expectedMessageBuilder.append(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX).append(" Version of 1 artifacts updated\n\nChanges:\n");
     expectedMessageBuilder.append(" - ").append("test1").append("-").append("1.1.1").append("\n");
+    expectedMessageBuilder.append("\n").append(ScmHandler.NONSNAPSHOT_COMMIT_TRAILER).append("\n");
     doThrow(new RuntimeException("test")).when(this.mockScmHandler).commitFiles(anyList(), eq(expectedMessageBuilder.toString()));
 
     this.nonSnapshotMojo.setDontFailOnCommit(false);
@@ -0,0 +1,98 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import static junit.framework.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Properties;
+
+import at.nonblocking.maven.nonsnapshot.impl.ScmHandlerGitImpl;
+import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.impl.StaticLoggerBinder;
+
+public class NonSnapshotPretendMojoTest {
+
+  private static final String COUNTER_REF = "refs/nonsnapshot/counters/at.nonblocking/test";
+
+  private NonSnapshotPretendMojo nonSnapshotMojo = new NonSnapshotPretendMojo();
+  private ModuleTraverser mockModuleTraverser = mock(ModuleTraverser.class);
+  private DependencyTreeProcessor mockDependencyTreeProcessor = mock(DependencyTreeProcessor.class);
+  private MavenPomHandler mockMavenPomHandler = mock(MavenPomHandler.class);
+  private UpstreamDependencyHandler mockUpstreamDependencyHandler = mock(UpstreamDependencyHandler.class);
+
+  private MavenModule mavenModule;
+  private File workDir;
+  private Git git;
+
+  @BeforeClass
+  public static void setupLog() {
+    StaticLoggerBinder.getSingleton().setLog(new DebugSystemStreamLog());
+  }
+
+  @Before
+  public void setupMojo() throws Exception {
+    this.workDir = new File("target/git-repositories/" + System.nanoTime()).getAbsoluteFile();
+    this.git = Git.init().setDirectory(this.workDir).call();
+
+    File pomFile = new File(this.workDir, "pom.xml");
+    try (PrintWriter writer = new PrintWriter(pomFile)) {
+      writer.write("<project/>");
+    }
+    this.git.add().addFilepattern("pom.xml").call();
+    this.git.commit().setMessage("Initial").call();
+
+    MavenProject mavenProject = new MavenProject();
+    mavenProject.setFile(pomFile);
+    this.nonSnapshotMojo.setMavenProject(mavenProject);
+
+    this.nonSnapshotMojo.setGitChangeDetection("LOG");
+    this.nonSnapshotMojo.setGitShallowPolicy("CHANGED");
+    this.nonSnapshotMojo.setIncrementVersionPattern(Constants.DEFAULT_INCREMENT_VERSION_PATTERN);
+    this.nonSnapshotMojo.setReplaceSpecialSymbolsInVersionBy("-");
+    this.nonSnapshotMojo.setAppendBranchNameToVersion(true);
+    this.nonSnapshotMojo.setAllocateBuildNumbers(true);
+    this.nonSnapshotMojo.setBranchName("feature");
+    this.nonSnapshotMojo.setModuleTraverser(this.mockModuleTraverser);
+    this.nonSnapshotMojo.setDependencyTreeProcessor(this.mockDependencyTreeProcessor);
+    this.nonSnapshotMojo.setMavenPomHandler(this.mockMavenPomHandler);
+    this.nonSnapshotMojo.setScmHandler(new ScmHandlerGitImpl());
+    this.nonSnapshotMojo.setUpstreamDependencyHandler(this.mockUpstreamDependencyHandler);
+
+    Model model = new Model();
+    this.mavenModule = new MavenModule(pomFile, "at.nonblocking", "test", "1.2.3-feature-4");
+    when(this.mockModuleTraverser.findAllModules(any(MavenProject.class), anyList(), any(MavenPomHandler.class))).thenReturn(Collections.singletonList(model));
+    when(this.mockMavenPomHandler.readArtifact(model)).thenReturn(this.mavenModule);
+    when(this.mockMavenPomHandler.readModel(any(File.class))).thenReturn(model);
+  }
+
+  @After
+  public void closeRepository() {
+    this.git.close();
+  }
+
+  @Test
+  public void testPretendDoesNotAllocateBuildNumbers() throws Exception {
+    ScmHandler scmHandler = new ScmHandlerGitImpl();
+    scmHandler.init(this.workDir, null, null, new Properties());
+    assertEquals(7, scmHandler.allocateBuildNumber("at.nonblocking", "test", 7));
+    ObjectId counterBefore = this.git.getRepository().exactRef(COUNTER_REF).getObjectId();
+
+    this.nonSnapshotMojo.execute();
+
+    ObjectId counterAfter = this.git.getRepository().exactRef(COUNTER_REF).getObjectId();
+    assertEquals(counterBefore, counterAfter);
+    assertEquals("1.2.3-feature-8", this.mavenModule.getNewVersion());
+    assertEquals(8, scmHandler.allocateBuildNumber("at.nonblocking", "test", 1));
+  }
+
+}
@@ -0,0 +1,170 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import static junit.framework.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import at.nonblocking.maven.nonsnapshot.impl.DependencyTreeProcessorDefaultImpl;
+import at.nonblocking.maven.nonsnapshot.impl.MavenPomHandlerDefaultImpl;
+import at.nonblocking.maven.nonsnapshot.impl.ScmHandlerGitImpl;
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.impl.StaticLoggerBinder;
+
+public class NonSnapshotUpdateVersionsMojoTest {
+
+  private NonSnapshotUpdateVersionsMojo nonSnapshotMojo = new NonSnapshotUpdateVersionsMojo();
+  private MavenPomHandler mavenPomHandler = new MavenPomHandlerDefaultImpl();
+  private ModuleTraverser mockModuleTraverser = mock(ModuleTraverser.class);
+  private UpstreamDependencyHandler mockUpstreamDependencyHandler = mock(UpstreamDependencyHandler.class);
+
+  private File workDir;
+  private Git git;
+
+  @BeforeClass
+  public static void setupLog() {
+    StaticLoggerBinder.getSingleton().setLog(new DebugSystemStreamLog());
+  }
+
+  @Before
+  public void setupRepository() throws Exception {
+    this.workDir = new File("target/git-repositories/" + System.nanoTime()).getAbsoluteFile();
+    this.git = Git.init().setDirectory(this.workDir).call();
+  }
+
+  @After
+  public void closeRepository() {
+    this.git.close();
+  }
+
+  @Test
+  public void testRecomputeConflictedModulesInDependencyOrder() throws Exception {
+    // module-a depends on module-b, module-c on module-b too
+    writePom("module-a", "1.0.0", "module-b", "1.0.0");
+    writePom("module-b", "1.0.0", null, null);
+    writePom("module-c", "1.0.0", "module-b", "1.0.0");
+    this.git.add().addFilepattern(".").call();
+    this.git.commit().setMessage("Initial import").call();
+    Git upstreamClone = cloneViaRemote();
+
+    // A concurrent version update of module-a and module-b
+    File upstreamWorkDir = upstreamClone.getRepository().getWorkTree();
+    writePom(upstreamWorkDir, "module-a", "1.5.0", "module-b", "1.5.0");
+    writePom(upstreamWorkDir, "module-b", "1.5.0", null, null);
+    upstreamClone.add().addFilepattern(".").call();
+    upstreamClone.commit().setMessage(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 2 artifacts updated").call();
+    upstreamClone.push().call();
+    upstreamClone.close();
+
+    setupMojo();
+    this.nonSnapshotMojo.execute();
+
+    RevCommit head = this.git.log().setMaxCount(1).call().iterator().next();
+    String versionA = readVersion(head, "module-a");
+    String versionB = readVersion(head, "module-b");
+    String versionC = readVersion(head, "module-c");
+    assertFalse("1.5.0".equals(versionA));
+    assertFalse("1.5.0".equals(versionB));
+    assertEquals(versionB, readDependencyVersion(head, "module-a"));
+    assertEquals(versionB, readDependencyVersion(head, "module-c"));
+    assertEquals(versionC, this.mavenPomHandler.readArtifact(new File(this.workDir, "module-c/pom.xml")).getVersion());
+  }
+
+  private void setupMojo() {
+    MavenProject mavenProject = new MavenProject();
+    mavenProject.setFile(new File(this.workDir, "pom.xml"));
+    this.nonSnapshotMojo.setMavenProject(mavenProject);
+
+    this.nonSnapshotMojo.setGitDoPush(true);
+    this.nonSnapshotMojo.setGitPushRetries(3);
+    this.nonSnapshotMojo.setGitChangeDetection("LOG");
+    this.nonSnapshotMojo.setGitShallowPolicy("CHANGED");
+    this.nonSnapshotMojo.setIncrementVersionPattern(Constants.DEFAULT_INCREMENT_VERSION_PATTERN);
+    this.nonSnapshotMojo.setReplaceSpecialSymbolsInVersionBy("-");
+    this.nonSnapshotMojo.setModuleTraverser(this.mockModuleTraverser);
+    this.nonSnapshotMojo.setDependencyTreeProcessor(new DependencyTreeProcessorDefaultImpl());
+    this.nonSnapshotMojo.setMavenPomHandler(this.mavenPomHandler);
+    this.nonSnapshotMojo.setScmHandler(new ScmHandlerGitImpl());
+    this.nonSnapshotMojo.setUpstreamDependencyHandler(this.mockUpstreamDependencyHandler);
+
+    List<Model> models = new ArrayList<>();
+    for (String module : new String[]{"module-a", "module-b", "module-c"}) {
+      models.add(this.mavenPomHandler.readModel(new File(this.workDir, module + "/pom.xml")));
+    }
+    when(this.mockModuleTraverser.findAllModules(any(MavenProject.class), anyList(), any(MavenPomHandler.class))).thenReturn(models);
+  }
+
+  /**
+   * Make a bare remote of the work dir repository and return a second clone of it.
+   */
+  private Git cloneViaRemote() throws Exception {
+    File remoteDir = new File(this.workDir.getParentFile(), this.workDir.getName() + "-remote.git");
+    Git.cloneRepository().setURI(this.workDir.toURI().toString()).setDirectory(remoteDir).setBare(true).call().close();
+
+    StoredConfig config = this.git.getRepository().getConfig();
+    config.setString("remote", "origin", "url", remoteDir.toURI().toString());
+    config.setString("remote", "origin", "fetch", "+refs/heads/*:refs/remotes/origin/*");
+    config.setString("branch", "master", "remote", "origin");
+    config.setString("branch", "master", "merge", "refs/heads/master");
+    config.save();
+    this.git.fetch().call();
+
+    File cloneDir = new File(this.workDir.getParentFile(), this.workDir.getName() + "-clone");
+    return Git.cloneRepository().setURI(remoteDir.toURI().toString()).setDirectory(cloneDir).call();
+  }
+
+  private String readVersion(RevCommit commit, String module) throws Exception {
+    return readModel(commit, module).getVersion();
+  }
+
+  private String readDependencyVersion(RevCommit commit, String module) throws Exception {
+    return readModel(commit, module).getDependencies().get(0).getVersion();
+  }
+
+  private Model readModel(RevCommit commit, String module) throws Exception {
+    File pomFile = new File(this.workDir.getParentFile(), this.workDir.getName() + "-" + commit.name() + "-" + module + ".xml");
+    try (TreeWalk treeWalk = TreeWalk.forPath(this.git.getRepository(), module + "/pom.xml", commit.getTree())) {
+      Files.write(pomFile.toPath(), this.git.getRepository().open(treeWalk.getObjectId(0)).getBytes());
+    }
+    return this.mavenPomHandler.readModel(pomFile);
+  }
+
+  private void writePom(String module, String version, String dependency, String dependencyVersion) throws Exception {
+    writePom(this.workDir, module, version, dependency, dependencyVersion);
+  }
+
+  private static void writePom(File baseDir, String module, String version, String dependency, String dependencyVersion) throws Exception {
+    File pomFile = new File(baseDir, module + "/pom.xml");
+    pomFile.getParentFile().mkdirs();
+    try (PrintWriter writer = new PrintWriter(pomFile)) {
+      writer.write("<project>\n");
+      writer.write("  <modelVersion>4.0.0</modelVersion>\n");
+      writer.write("  <groupId>at.nonblocking</groupId>\n");
+      writer.write("  <artifactId>" + module + "</artifactId>\n");
+      writer.write("  <version>" + version + "</version>\n");
+      if (dependency != null) {
+        writer.write("  <dependencies>\n");
+        writer.write("    <dependency>\n");
+        writer.write("      <groupId>at.nonblocking</groupId>\n");
+        writer.write("      <artifactId>" + dependency + "</artifactId>\n");
+        writer.write("      <version>" + dependencyVersion + "</version>\n");
+        writer.write("    </dependency>\n");
+        writer.write("  </dependencies>\n");
+      }
+      writer.write("</project>\n");
+    }
+  }
+}
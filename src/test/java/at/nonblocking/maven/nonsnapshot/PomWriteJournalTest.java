@@ -0,0 +1,106 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.impl.StaticLoggerBinder;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import at.nonblocking.maven.nonsnapshot.impl.MavenPomHandlerDefaultImpl;
+
+public class PomWriteJournalTest {
+
+  private final File baseDir = new File("target/journal-test").getAbsoluteFile();
+  private final File journalFile = new File(this.baseDir, "nonSnapshotPomJournal.txt");
+  private final File pom1 = new File(this.baseDir, "pom.xml");
+  private final File pom2 = new File(this.baseDir, "module1/pom.xml");
+
+  private final MavenPomHandler pomHandler = new MavenPomHandlerDefaultImpl();
+
+  @BeforeClass
+  public static void setupLog() {
+    StaticLoggerBinder.getSingleton().setLog(new DebugSystemStreamLog());
+  }
+
+  @Before
+  public void setupPoms() throws Exception {
+    this.pom2.getParentFile().mkdirs();
+    this.journalFile.delete();
+    write(this.pom1, "<project><version>1.0.0</version></project>");
+    write(this.pom2, "<project><version>2.0.0</version></project>");
+  }
+
+  @Test
+  public void testFinishAfterCrash() throws Exception {
+    PomWriteJournal journal = createJournal();
+    journal.write();
+
+    // Crash after the first POM
+    assertTrue(journal.finish(this.pom1, this.pomHandler));
+
+    PomWriteJournal readJournal = PomWriteJournal.read(this.journalFile, this.baseDir);
+    assertEquals(2, readJournal.getPomFiles().size());
+    assertFalse(readJournal.finish(this.pom1.getCanonicalFile(), this.pomHandler));
+    assertTrue(readJournal.finish(this.pom2.getCanonicalFile(), this.pomHandler));
+    readJournal.delete();
+
+    assertEquals("<project><version>1.0.1</version></project>", read(this.pom1));
+    assertEquals("<project><version>2.0.1</version></project>", read(this.pom2));
+    assertFalse(this.journalFile.exists());
+  }
+
+  @Test
+  public void testRollback() throws Exception {
+    PomWriteJournal journal = createJournal();
+    journal.write();
+    journal.finish(this.pom1, this.pomHandler);
+
+    PomWriteJournal readJournal = PomWriteJournal.read(this.journalFile, this.baseDir);
+    assertTrue(readJournal.rollback(this.pom1.getCanonicalFile(), this.pomHandler));
+    assertFalse(readJournal.rollback(this.pom2.getCanonicalFile(), this.pomHandler));
+
+    assertEquals("<project><version>1.0.0</version></project>", read(this.pom1));
+    assertEquals("<project><version>2.0.0</version></project>", read(this.pom2));
+  }
+
+  @Test(expected = NonSnapshotPluginException.class)
+  public void testFinishModifiedPom() throws Exception {
+    PomWriteJournal journal = createJournal();
+    journal.write();
+
+    write(this.pom2, "<project><version>3.0.0</version></project>");
+
+    PomWriteJournal.read(this.journalFile, this.baseDir).finish(this.pom2.getCanonicalFile(), this.pomHandler);
+  }
+
+  @Test(expected = NonSnapshotPluginException.class)
+  public void testReadTruncatedJournal() throws Exception {
+    createJournal().write();
+
+    byte[] content = Files.readAllBytes(this.journalFile.toPath());
+    Files.write(this.journalFile.toPath(), new String(content, StandardCharsets.UTF_8).substring(0, content.length - 20).getBytes(StandardCharsets.UTF_8));
+
+    PomWriteJournal.read(this.journalFile, this.baseDir);
+  }
+
+  private PomWriteJournal createJournal() throws Exception {
+    PomWriteJournal journal = new PomWriteJournal(this.journalFile, this.baseDir);
+    journal.add(this.pom1, Files.readAllBytes(this.pom1.toPath()), "<project><version>1.0.1</version></project>".getBytes(StandardCharsets.UTF_8));
+    journal.add(this.pom2, Files.readAllBytes(this.pom2.toPath()), "<project><version>2.0.1</version></project>".getBytes(StandardCharsets.UTF_8));
+    return journal;
+  }
+
+  private static void write(File file, String content) throws Exception {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String read(File file) throws Exception {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+}
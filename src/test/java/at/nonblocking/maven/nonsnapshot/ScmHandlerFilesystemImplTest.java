@@ -0,0 +1,171 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import at.nonblocking.maven.nonsnapshot.impl.ScmHandlerFilesystemImpl;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.impl.StaticLoggerBinder;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+
+import static junit.framework.Assert.*;
+
+public class ScmHandlerFilesystemImplTest {
+
+  private File workDir;
+  private File module1;
+  private File module2;
+
+  @BeforeClass
+  public static void setupLog() {
+    StaticLoggerBinder.getSingleton().setLog(new DebugSystemStreamLog());
+  }
+
+  @Before
+  public void setupWorkDir() throws Exception {
+    this.workDir = new File("target/filesystem-snapshots/" + System.nanoTime()).getAbsoluteFile();
+    this.module1 = new File(this.workDir, "module1");
+    this.module2 = new File(this.workDir, "module2");
+    write("pom.xml", "<project/>");
+    write("module1/pom.xml", "<project>1</project>");
+    write("module1/src/A.java", "class A {}");
+    write("module2/pom.xml", "<project>2</project>");
+    write("module2/src/B.java", "class B {}");
+  }
+
+  @Test
+  public void testCheckChangesSinceLastUpdate() throws Exception {
+    Map<File, Boolean> changes = createScmHandler().checkChangesSinceLastUpdate(Arrays.asList(this.module1, this.module2));
+    assertTrue(changes.get(this.module1));
+    assertTrue(changes.get(this.module2));
+
+    write("module1/pom.xml", "<project>1.0.1</project>");
+    write("module2/pom.xml", "<project>2.0.1</project>");
+    createScmHandler().commitFiles(Arrays.asList(new File(this.module1, "pom.xml"), new File(this.module2, "pom.xml")), "Version update");
+
+    changes = createScmHandler().checkChangesSinceLastUpdate(Arrays.asList(this.module1, this.module2));
+    assertFalse(changes.get(this.module1));
+    assertFalse(changes.get(this.module2));
+
+    write("module1/target/classes/A.class", "build output");
+    write("module2/src/B.java", "class B { int b; }");
+    write("module2/README.md", "ignored");
+
+    changes = createScmHandler().checkChangesSinceLastUpdate(Arrays.asList(this.module1, this.module2));
+    assertFalse(changes.get(this.module1));
+    assertTrue(changes.get(this.module2));
+
+    // A change which is reverted doesn't count
+    write("module2/src/B.java", "class B {}");
+    changes = createScmHandler().checkChangesSinceLastUpdate(Arrays.asList(this.module1, this.module2));
+    assertFalse(changes.get(this.module2));
+  }
+
+  @Test
+  public void testCheckChangesSinceLastUpdatePomScope() throws Exception {
+    File rootPom = new File(this.workDir, "pom.xml");
+    createScmHandler().checkChangesSinceLastUpdate(Arrays.asList(rootPom, this.module1));
+    createScmHandler().commitFiles(Collections.singletonList(rootPom), "Version update");
+
+    write("module1/src/A.java", "class A { int a; }");
+
+    Map<File, Boolean> changes = createScmHandler().checkChangesSinceLastUpdate(Arrays.asList(rootPom, this.module1));
+    assertFalse(changes.get(rootPom));
+    assertTrue(changes.get(this.module1));
+  }
+
+  @Test
+  public void testCheckChangesSinceDate() throws Exception {
+    new File(this.workDir, "module1/pom.xml").setLastModified(1000000L);
+    new File(this.workDir, "module1/src/A.java").setLastModified(1000000L);
+
+    Map<File, Boolean> changes = createScmHandler().checkChangesSinceDate(Arrays.asList(this.module1, this.module2), new Date(2000000L));
+    assertFalse(changes.get(this.module1));
+    assertTrue(changes.get(this.module2));
+  }
+
+  @Test
+  public void testSnapshotFileOutsideOfExport() throws Exception {
+    File snapshotFile = new File(this.workDir.getParentFile(), this.workDir.getName() + "-state/filesystemSnapshot.idx");
+    File rootPom = new File(this.workDir, "pom.xml");
+    createScmHandler(snapshotFile).checkChangesSinceLastUpdate(Arrays.asList(this.module1, this.module2));
+    createScmHandler(snapshotFile).commitFiles(Collections.singletonList(rootPom), "Version update");
+    assertTrue(snapshotFile.exists());
+
+    // A fresh export: all files are new, but only the content counts
+    deleteRecursively(this.workDir);
+    setupWorkDir();
+    write("module2/src/B.java", "class B { int b; }");
+
+    Map<File, Boolean> changes = createScmHandler(snapshotFile).checkChangesSinceLastUpdate(Arrays.asList(this.module1, this.module2));
+    assertFalse(changes.get(this.module1));
+    assertTrue(changes.get(this.module2));
+  }
+
+  @Test
+  public void testOnlyPluginStateFilesAreSkipped() throws Exception {
+    File snapshotFile = new File(this.workDir, "module1/filesystemSnapshot.idx");
+    File stateFile = new File(this.workDir, "module1/nonSnapshotDirtyModules.txt");
+    write("module2/src/NonSnapshotBaseMojo.java", "class NonSnapshotBaseMojo {}");
+    createScmHandler(snapshotFile, stateFile).checkChangesSinceLastUpdate(Arrays.asList(this.module1, this.module2));
+    createScmHandler(snapshotFile, stateFile).commitFiles(Collections.singletonList(new File(this.workDir, "pom.xml")), "Version update");
+
+    write("module1/nonSnapshotDirtyModules.txt", "module1");
+    write("module2/src/NonSnapshotBaseMojo.java", "class NonSnapshotBaseMojo { int a; }");
+
+    Map<File, Boolean> changes = createScmHandler(snapshotFile, stateFile).checkChangesSinceLastUpdate(Arrays.asList(this.module1, this.module2));
+    assertFalse(changes.get(this.module1));
+    assertTrue(changes.get(this.module2));
+  }
+
+  @Test(expected = NonSnapshotPluginException.class)
+  public void testSnapshotFileRequired() {
+    new ScmHandlerFilesystemImpl().init(this.workDir, null, null, new Properties());
+  }
+
+  private ScmHandler createScmHandler() {
+    return createScmHandler(new File(this.workDir.getParentFile(), this.workDir.getName() + ".idx"));
+  }
+
+  private ScmHandler createScmHandler(File snapshotFile, File... stateFiles) {
+    Properties properties = new Properties();
+    properties.setProperty("gitIgnoredPaths", "**/README.md");
+    properties.setProperty("filesystemSnapshotFile", snapshotFile.getAbsolutePath());
+    if (stateFiles.length > 0) {
+      StringBuilder paths = new StringBuilder();
+      for (File stateFile : stateFiles) {
+        paths.append(stateFile.getAbsolutePath()).append('\n');
+      }
+      properties.setProperty("filesystemStateFiles", paths.toString());
+    }
+
+    ScmHandler scmHandler = new ScmHandlerFilesystemImpl();
+    scmHandler.init(this.workDir, null, null, properties);
+    return scmHandler;
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  private void write(String path, String content) throws Exception {
+    File file = new File(this.workDir, path);
+    file.getParentFile().mkdirs();
+    try (PrintWriter writer = new PrintWriter(file)) {
+      writer.write(content);
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import at.nonblocking.maven.nonsnapshot.impl.ScmHandlerGitCliImpl;
+
+/**
+ * Runs all local repository tests with the native git history access.
+ */
+public class ScmHandlerGitCliImplLocalRepositoryTest extends ScmHandlerGitImplLocalRepositoryTest {
+
+  @Override
+  protected ScmHandler newScmHandler() {
+    return new ScmHandlerGitCliImpl();
+  }
+}
@@ -0,0 +1,699 @@
+package at.nonblocking.maven.nonsnapshot;
+
+import at.nonblocking.maven.nonsnapshot.exception.NonSnapshotPluginException;
+import at.nonblocking.maven.nonsnapshot.impl.ScmHandlerGitImpl;
+import at.nonblocking.maven.nonsnapshot.model.MavenModule;
+import org.eclipse.jgit.api.CommitCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.MergeCommand;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.impl.StaticLoggerBinder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static junit.framework.Assert.*;
+
+public class ScmHandlerGitImplLocalRepositoryTest {
+
+  private File workDir;
+  private Git git;
+
+  @BeforeClass
+  public static void setupLog() {
+    StaticLoggerBinder.getSingleton().setLog(new DebugSystemStreamLog());
+  }
+
+  @Before
+  public void setupRepository() throws Exception {
+    this.workDir = new File("target/git-repositories/" + System.nanoTime()).getAbsoluteFile();
+    this.git = Git.init().setDirectory(this.workDir).call();
+  }
+
+  @After
+  public void closeRepository() {
+    this.git.close();
+  }
+
+  @Test
+  public void testCheckChangesSinceLastUpdateBulk() throws Exception {
+    commit("Initial import", "pom.xml", "module1/pom.xml", "module1/src/A.java", "module2/pom.xml", "module2/src/B.java");
+    commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 2 artifacts updated", "module1/pom.xml", "module2/pom.xml");
+    commit("Fix in module2", "module2/src/B.java");
+
+    File rootPom = new File(this.workDir, "pom.xml");
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+    File module3 = new File(this.workDir, "module3");
+
+    Map<File, Boolean> changes = createScmHandler().checkChangesSinceLastUpdate(Arrays.asList(rootPom, module1, module2, module3));
+
+    assertEquals(4, changes.size());
+    assertTrue(changes.get(rootPom));
+    assertFalse(changes.get(module1));
+    assertTrue(changes.get(module2));
+    assertTrue(changes.get(module3));
+  }
+
+  @Test
+  public void testCheckChangesSinceLastUpdateTrailer() throws Exception {
+    commit("Initial import", "module1/pom.xml", "module2/pom.xml");
+    commit("Squashed: Version of 1 artifacts updated\n\n" + ScmHandler.NONSNAPSHOT_COMMIT_TRAILER + "\n", "module1/pom.xml");
+
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+
+    Map<File, Boolean> changes = createScmHandler().checkChangesSinceLastUpdate(Arrays.asList(module1, module2));
+
+    assertFalse(changes.get(module1));
+    assertTrue(changes.get(module2));
+  }
+
+  @Test
+  public void testCheckChangesSinceLastUpdateNestedModules() throws Exception {
+    commit("Initial import", "parent/pom.xml", "parent/child/pom.xml", "parent/child/src/A.java");
+    commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 2 artifacts updated", "parent/pom.xml", "parent/child/pom.xml");
+    commit("Fix in child", "parent/child/src/A.java");
+
+    File parent = new File(this.workDir, "parent");
+    File child = new File(this.workDir, "parent/child");
+
+    Map<File, Boolean> changes = createScmHandler().checkChangesSinceLastUpdate(Arrays.asList(parent, child));
+
+    assertTrue(changes.get(parent));
+    assertTrue(changes.get(child));
+    assertTrue(createScmHandler().checkChangesSinceLastUpdate(child));
+  }
+
+  @Test
+  public void testCheckChangesSinceLastUpdateIncremental() throws Exception {
+    commit("Initial import", "module1/pom.xml", "module2/pom.xml");
+    commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 2 artifacts updated", "module1/pom.xml", "module2/pom.xml");
+
+    File stateFile = new File(this.workDir, "nonSnapshotChangeState.properties");
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+
+    Map<File, Boolean> changes1 = createScmHandler(stateFile).checkChangesSinceLastUpdate(Arrays.asList(module1, module2));
+    assertFalse(changes1.get(module1));
+    assertFalse(changes1.get(module2));
+    assertTrue(stateFile.exists());
+
+    RevCommit fix = commit("Fix in module2", "module2/src/B.java");
+
+    Map<File, Boolean> changes2 = createScmHandler(stateFile).checkChangesSinceLastUpdate(Arrays.asList(module1, module2));
+    assertFalse(changes2.get(module1));
+    assertTrue(changes2.get(module2));
+
+    Properties state = new Properties();
+    try (FileInputStream inputStream = new FileInputStream(stateFile)) {
+      state.load(inputStream);
+    }
+    assertEquals(fix.name(), state.getProperty("head"));
+    assertEquals(fix.name() + " changed", state.getProperty("scope.module2"));
+
+    Map<File, Boolean> changes3 = createScmHandler(stateFile).checkChangesSinceLastUpdate(Arrays.asList(module1, module2));
+    assertEquals(changes2, changes3);
+  }
+
+  @Test
+  public void testCheckChangesSinceLastUpdateTreeId() throws Exception {
+    commit("Initial import", "module1/pom.xml", "module2/pom.xml", "module2/src/B.java");
+    commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 2 artifacts updated", "module1/pom.xml", "module2/pom.xml");
+    commit("Fix in module2", "module2/src/B.java");
+    commit("Add module3", "module3/pom.xml");
+
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+    File module3 = new File(this.workDir, "module3");
+    File module2Pom = new File(this.workDir, "module2/pom.xml");
+
+    Properties properties = new Properties();
+    properties.setProperty("gitChangeDetection", "TREE_ID");
+    properties.setProperty("gitThreads", "2");
+    Map<File, Boolean> changes = createScmHandler(properties).checkChangesSinceLastUpdate(Arrays.asList(module1, module2, module3, module2Pom));
+
+    assertFalse(changes.get(module1));
+    assertTrue(changes.get(module2));
+    assertTrue(changes.get(module3));
+    assertFalse(changes.get(module2Pom));
+  }
+
+  @Test
+  public void testCheckChangesSinceLastUpdateShallow() throws Exception {
+    commit("Initial import", "module1/pom.xml", "module2/pom.xml", "module3/pom.xml");
+    commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 3 artifacts updated", "module1/pom.xml", "module2/pom.xml", "module3/pom.xml");
+
+    File stateFile = new File(this.workDir, "nonSnapshotChangeState.properties");
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+    File module3 = new File(this.workDir, "module3");
+    createScmHandler(stateFile).checkChangesSinceLastUpdate(Arrays.asList(module1, module2, module3));
+
+    RevCommit boundary = commit("Fix in module2", "module2/src/B.java");
+    commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated", "module2/pom.xml");
+    commit("Fix in module3", "module3/src/C.java");
+    write(new File(this.workDir, ".git/shallow"), boundary.name() + "\n");
+
+    Map<File, Boolean> changes = createScmHandler().checkChangesSinceLastUpdate(Arrays.asList(module1, module2, module3));
+    assertTrue(changes.get(module1));
+    assertFalse(changes.get(module2));
+    assertTrue(changes.get(module3));
+
+    Properties properties = new Properties();
+    properties.setProperty("gitShallowPolicy", "TREE_ID");
+    Map<File, Boolean> treeIdChanges = createScmHandler(properties).checkChangesSinceLastUpdate(Arrays.asList(module1, module2, module3));
+    assertFalse(treeIdChanges.get(module1));
+    assertFalse(treeIdChanges.get(module2));
+    assertTrue(treeIdChanges.get(module3));
+
+    properties = new Properties();
+    properties.setProperty("gitShallowPolicy", "TRUST_STATE");
+    properties.setProperty("gitChangeStateFile", stateFile.getAbsolutePath());
+    Map<File, Boolean> trustedChanges = createScmHandler(properties).checkChangesSinceLastUpdate(Arrays.asList(module1, module2, module3));
+    assertFalse(trustedChanges.get(module1));
+    assertFalse(trustedChanges.get(module2));
+    assertTrue(trustedChanges.get(module3));
+  }
+
+  @Test
+  public void testCheckChangesSinceDateShallow() throws Exception {
+    Date date = new Date(System.currentTimeMillis() - 60000);
+    RevCommit boundary = commit("Initial import", "module1/pom.xml", "module2/pom.xml", "module3/pom.xml");
+    commit("Fix in module3", "module3/src/C.java");
+    write(new File(this.workDir, ".git/shallow"), boundary.name() + "\n");
+
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+    File module3 = new File(this.workDir, "module3");
+    Map<File, Boolean> changes = createScmHandler().checkChangesSinceDate(Arrays.asList(module1, module2, module3), date);
+    assertFalse(changes.get(module1));
+    assertFalse(changes.get(module2));
+    assertTrue(changes.get(module3));
+  }
+
+  @Test
+  public void testCheckChangesSinceLastUpdateFirstParent() throws Exception {
+    RevCommit base = commit("Initial import", "module1/pom.xml", "module2/pom.xml");
+    this.git.branchCreate().setName("release").setStartPoint(base).call();
+    commit("Fix in module2", "module2/src/B.java");
+    this.git.checkout().setName("release").call();
+    commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated", "module1/pom.xml");
+    this.git.checkout().setName("master").call();
+    this.git.merge().include(this.git.getRepository().resolve("release")).setFastForward(MergeCommand.FastForwardMode.NO_FF).call();
+
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+
+    Map<File, Boolean> changes = createScmHandler().checkChangesSinceLastUpdate(Arrays.asList(module1, module2));
+    assertFalse(changes.get(module1));
+    assertTrue(changes.get(module2));
+
+    Properties properties = new Properties();
+    properties.setProperty("gitFirstParent", "true");
+    Map<File, Boolean> firstParentChanges = createScmHandler(properties).checkChangesSinceLastUpdate(Arrays.asList(module1, module2));
+    assertTrue(firstParentChanges.get(module1));
+    assertTrue(firstParentChanges.get(module2));
+  }
+
+  @Test
+  public void testCheckChangesSinceLastUpdateIgnoredPathsAndAuthors() throws Exception {
+    commit("Initial import", "module1/pom.xml", "module2/pom.xml", "module3/pom.xml");
+    commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 3 artifacts updated", "module1/pom.xml", "module2/pom.xml", "module3/pom.xml");
+    commit("Update readme", "module1/README.md", "module1/src/test/resources/fixture.txt");
+    commit(new PersonIdent("format-bot", "bot@example.com"), "Reformat", "module2/src/B.java");
+    commit("Fix in module3", "module3/src/C.java");
+
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+    File module3 = new File(this.workDir, "module3");
+
+    Properties properties = new Properties();
+    properties.setProperty("gitIgnoredPaths", "**/README.md\n**/src/test/**");
+    properties.setProperty("gitIgnoredAuthors", "^format-bot ");
+    Map<File, Boolean> changes = createScmHandler(properties).checkChangesSinceLastUpdate(Arrays.asList(module1, module2, module3));
+
+    assertFalse(changes.get(module1));
+    assertFalse(changes.get(module2));
+    assertTrue(changes.get(module3));
+
+    properties.setProperty("gitChangeDetection", "TREE_ID");
+    Map<File, Boolean> treeIdChanges = createScmHandler(properties).checkChangesSinceLastUpdate(Arrays.asList(module1, module2, module3));
+
+    assertFalse(treeIdChanges.get(module1));
+    assertTrue(treeIdChanges.get(module2));
+    assertTrue(treeIdChanges.get(module3));
+  }
+
+  @Test
+  public void testCheckChangesSinceRevision() throws Exception {
+    RevCommit base = commit("Initial import", "pom.xml", "module1/pom.xml", "module2/pom.xml", "module2/src/B.java");
+    commit("Fix in module2", "module2/src/B.java");
+
+    File rootPom = new File(this.workDir, "pom.xml");
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+
+    ScmHandler scmHandler = createScmHandler();
+    Map<File, Boolean> changes = scmHandler.checkChangesSinceRevision(Arrays.asList(rootPom, module1, module2), base.name());
+
+    assertFalse(changes.get(rootPom));
+    assertFalse(changes.get(module1));
+    assertTrue(changes.get(module2));
+    assertTrue(scmHandler.checkChangesSinceRevision(this.workDir, base.name()));
+  }
+
+  @Test(expected = NonSnapshotPluginException.class)
+  public void testCheckChangesSinceUnknownRevision() throws Exception {
+    commit("Initial import", "pom.xml");
+
+    createScmHandler().checkChangesSinceRevision(Arrays.asList(this.workDir), "does-not-exist");
+  }
+
+  @Test
+  public void testCheckChangesSinceDateBulk() throws Exception {
+    commit("Initial import", "module1/pom.xml", "module2/pom.xml", "module3/pom.xml");
+    Date since = new Date();
+    Thread.sleep(1100);
+    commit("Fix in module2", "module2/src/B.java");
+    commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated", "module3/pom.xml");
+
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+    File module3 = new File(this.workDir, "module3");
+
+    Map<File, Boolean> changes = createScmHandler().checkChangesSinceDate(Arrays.asList(module1, module2, module3), since);
+
+    assertFalse(changes.get(module1));
+    assertTrue(changes.get(module2));
+    assertFalse(changes.get(module3));
+  }
+
+  @Test
+  public void testCheckChangesSinceDateMoreThan100Commits() throws Exception {
+    commit("Initial import", "module1/pom.xml", "module2/pom.xml");
+    Date since = new Date();
+    Thread.sleep(1100);
+    commit("Fix in module1", "module1/src/A.java");
+    for (int i = 0; i < 110; i++) {
+      commit(ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated", "module1/pom.xml");
+    }
+
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+
+    Map<File, Boolean> changes = createScmHandler().checkChangesSinceDate(Arrays.asList(module1, module2), since);
+
+    assertTrue(changes.get(module1));
+    assertFalse(changes.get(module2));
+  }
+
+  @Test
+  public void testCheckUncommittedChanges() throws Exception {
+    commit("Initial import", "pom.xml", "module1/pom.xml", "module2/pom.xml", "module2/src/B.java", "module3/pom.xml", "module4/pom.xml");
+
+    write(new File(this.workDir, "module2/src/B.java"), "modified");
+    write(new File(this.workDir, "module3/src/C.java"), "untracked");
+    write(new File(this.workDir, "module4/README.md"), "ignored");
+    write(new File(this.workDir, "module5/src/E.java"), "staged");
+    this.git.add().addFilepattern("module5/src/E.java").call();
+
+    File rootPom = new File(this.workDir, "pom.xml");
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+    File module3 = new File(this.workDir, "module3");
+    File module4 = new File(this.workDir, "module4");
+    File module5 = new File(this.workDir, "module5");
+
+    Properties properties = new Properties();
+    properties.setProperty("gitIgnoredPaths", "**/README.md");
+    Map<File, Boolean> changes = createScmHandler(properties).checkUncommittedChanges(Arrays.asList(rootPom, module1, module2, module3, module4, module5));
+
+    assertFalse(changes.get(rootPom));
+    assertFalse(changes.get(module1));
+    assertTrue(changes.get(module2));
+    assertTrue(changes.get(module3));
+    assertFalse(changes.get(module4));
+    assertTrue(changes.get(module5));
+  }
+
+  @Test
+  public void testCommitFiles() throws Exception {
+    RevCommit base = commit("Initial import", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    File pom1 = new File(this.workDir, "module1/pom.xml");
+    File pom2 = new File(this.workDir, "module2/pom.xml");
+    File pom3 = new File(this.workDir, "module3/pom.xml");
+    write(pom1, "<project>1</project>");
+    write(pom2, "<project>2</project>");
+    write(pom3, "<project>3</project>");
+
+    createScmHandler().commitFiles(Arrays.asList(pom1, pom2, pom3), "Nonsnapshot Plugin: Version of 3 artifacts updated");
+
+    RevCommit head = this.git.log().setMaxCount(1).call().iterator().next();
+    assertEquals("Nonsnapshot Plugin: Version of 3 artifacts updated", head.getFullMessage());
+    assertEquals(base, head.getParent(0));
+    assertTrue(this.git.status().call().isClean());
+
+    try (TreeWalk treeWalk = TreeWalk.forPath(this.git.getRepository(), "module3/pom.xml", head.getTree())) {
+      assertEquals("<project>3</project>", new String(this.git.getRepository().open(treeWalk.getObjectId(0)).getBytes(), "UTF-8"));
+    }
+  }
+
+  @Test
+  public void testAllocateBuildNumberConcurrently() throws Exception {
+    commit("Initial import", "pom.xml");
+
+    final ScmHandler scmHandler = createScmHandler();
+    assertEquals(5, scmHandler.allocateBuildNumber("at.nonblocking", "test", 5));
+    assertEquals(6, scmHandler.allocateBuildNumber("at.nonblocking", "test", 1));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> buildNumbers = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      buildNumbers.add(executor.submit(() -> createScmHandler().allocateBuildNumber("at.nonblocking", "test", 1)));
+    }
+    Set<Integer> uniqueBuildNumbers = new HashSet<>();
+    for (Future<Integer> buildNumber : buildNumbers) {
+      uniqueBuildNumbers.add(buildNumber.get());
+    }
+    executor.shutdown();
+
+    assertEquals(40, uniqueBuildNumbers.size());
+    assertEquals(47, scmHandler.allocateBuildNumber("at.nonblocking", "test", 1));
+    assertEquals(1, scmHandler.allocateBuildNumber("at.nonblocking", "other", 1));
+  }
+
+  @Test
+  public void testAllocateBuildNumberSharedBetweenClones() throws Exception {
+    commit("Initial import", "pom.xml");
+    Git otherClone = cloneViaRemote();
+    final File otherWorkDir = otherClone.getRepository().getWorkTree();
+    otherClone.close();
+    final Properties properties = new Properties();
+    properties.setProperty("gitPushRetries", "20");
+    properties.setProperty("gitPushRetryDelay", "1");
+
+    ScmHandler scmHandler = newScmHandler();
+    scmHandler.init(this.workDir, null, null, properties);
+    ScmHandler otherScmHandler = newScmHandler();
+    otherScmHandler.init(otherWorkDir, null, null, properties);
+    assertEquals(5, scmHandler.allocateBuildNumber("at.nonblocking", "test", 5));
+    assertEquals(6, otherScmHandler.peekBuildNumber("at.nonblocking", "test", 1));
+    assertEquals(6, otherScmHandler.allocateBuildNumber("at.nonblocking", "test", 1));
+    assertEquals(7, scmHandler.allocateBuildNumber("at.nonblocking", "test", 1));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> buildNumbers = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      final File workDir = i % 2 == 0 ? this.workDir : otherWorkDir;
+      buildNumbers.add(executor.submit(() -> {
+        ScmHandler concurrentScmHandler = newScmHandler();
+        concurrentScmHandler.init(workDir, null, null, properties);
+        return concurrentScmHandler.allocateBuildNumber("at.nonblocking", "test", 1);
+      }));
+    }
+    Set<Integer> uniqueBuildNumbers = new HashSet<>();
+    for (Future<Integer> buildNumber : buildNumbers) {
+      uniqueBuildNumbers.add(buildNumber.get());
+    }
+    executor.shutdown();
+
+    // A transfer retried after the remote accepted it leaves a gap, but never a duplicate
+    assertEquals(8, uniqueBuildNumbers.size());
+    assertTrue(Collections.min(uniqueBuildNumbers) > 7);
+    assertTrue(otherScmHandler.allocateBuildNumber("at.nonblocking", "test", 1) > Collections.max(uniqueBuildNumbers));
+  }
+
+  @Test
+  public void testCommitFilesReplaysRejectedPush() throws Exception {
+    commit("Initial import", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    Git upstreamClone = cloneViaRemote();
+    File pom1 = new File(this.workDir, "module1/pom.xml");
+    File pom2 = new File(this.workDir, "module2/pom.xml");
+
+    write(new File(upstreamClone.getRepository().getWorkTree(), "module2/src/B.java"), "class B {}");
+    upstreamClone.add().addFilepattern("module2/src/B.java").call();
+    RevCommit upstreamCommit = upstreamClone.commit().setMessage("Concurrent change").call();
+    upstreamClone.push().call();
+
+    write(pom1, "<project>1.0.1</project>");
+    write(pom2, "<project>2.0.1</project>");
+    createPushingScmHandler().commitFiles(Arrays.asList(pom1, pom2), "Nonsnapshot Plugin: Version of 2 artifacts updated",
+        conflictedPomFiles -> { throw new AssertionError("No conflict expected"); });
+
+    RevCommit head = this.git.log().setMaxCount(1).call().iterator().next();
+    assertEquals(upstreamCommit, head.getParent(0));
+    assertEquals("<project>1.0.1</project>", read(head, "module1/pom.xml"));
+    assertTrue(new File(this.workDir, "module2/src/B.java").exists());
+    assertEquals(head, upstreamClone.fetch().call().getAdvertisedRef("refs/heads/master").getObjectId());
+    upstreamClone.close();
+  }
+
+  @Test
+  public void testCommitFilesReplaysRejectedPushWithConflict() throws Exception {
+    commit("Initial import", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    Git upstreamClone = cloneViaRemote();
+    File pom1 = new File(this.workDir, "module1/pom.xml");
+    File pom2 = new File(this.workDir, "module2/pom.xml");
+
+    write(new File(upstreamClone.getRepository().getWorkTree(), "module1/pom.xml"), "<project>1.0.5</project>");
+    upstreamClone.add().addFilepattern("module1/pom.xml").call();
+    RevCommit upstreamCommit = upstreamClone.commit().setMessage("Concurrent version update").call();
+    upstreamClone.push().call();
+
+    write(pom1, "<project>1.0.1</project>");
+    write(pom2, "<project>2.0.1</project>");
+    final List<File> conflicts = new ArrayList<>();
+    createPushingScmHandler().commitFiles(Arrays.asList(pom1, pom2), "Nonsnapshot Plugin: Version of 2 artifacts updated",
+        conflictedPomFiles -> {
+          conflicts.addAll(conflictedPomFiles);
+          try {
+            assertEquals("<project>1.0.5</project>", new String(java.nio.file.Files.readAllBytes(pom1.toPath()), "UTF-8"));
+            write(pom1, "<project>1.0.6</project>");
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+          return "Nonsnapshot Plugin: Version of 2 artifacts updated (recomputed)";
+        });
+
+    assertEquals(Arrays.asList(pom1), conflicts);
+    RevCommit head = this.git.log().setMaxCount(1).call().iterator().next();
+    assertEquals(upstreamCommit, head.getParent(0));
+    assertEquals("Nonsnapshot Plugin: Version of 2 artifacts updated (recomputed)", head.getFullMessage());
+    assertEquals("<project>1.0.6</project>", read(head, "module1/pom.xml"));
+    assertEquals("<project>2.0.1</project>", read(head, "module2/pom.xml"));
+    upstreamClone.close();
+  }
+
+  @Test
+  public void testCreateTags() throws Exception {
+    RevCommit head = commit("Initial import", "pom.xml", "module1/pom.xml");
+    Git upstreamClone = cloneViaRemote();
+
+    createPushingScmHandler().createTags(Arrays.asList("module1-1.0.1", "module2-2.0.1"));
+
+    assertEquals(head, this.git.getRepository().exactRef("refs/tags/module1-1.0.1").getObjectId());
+    assertEquals(head, this.git.getRepository().exactRef("refs/tags/module2-2.0.1").getObjectId());
+    Collection<Ref> remoteTags = upstreamClone.lsRemote().setTags(true).call();
+    assertEquals(2, remoteTags.size());
+    for (Ref remoteTag : remoteTags) {
+      assertEquals(head, remoteTag.getObjectId());
+    }
+    upstreamClone.close();
+  }
+
+  @Test(expected = NonSnapshotPluginException.class)
+  public void testCreateTagsExisting() throws Exception {
+    commit("Initial import", "pom.xml");
+    this.git.tag().setName("module1-1.0.1").call();
+    commit("Fix", "pom.xml");
+
+    createScmHandler().createTags(Arrays.asList("module1-1.0.1"));
+  }
+
+  @Test
+  public void testVersionLedger() throws Exception {
+    commit("Initial import", "pom.xml", "module1/pom.xml", "module1/src/A.java", "module2/pom.xml", "module2/src/B.java");
+    File pom1 = new File(this.workDir, "module1/pom.xml");
+    File pom2 = new File(this.workDir, "module2/pom.xml");
+    File module1 = new File(this.workDir, "module1");
+    File module2 = new File(this.workDir, "module2");
+
+    Properties properties = new Properties();
+    properties.setProperty("gitVersionLedger", "true");
+    ScmHandler scmHandler = createScmHandler(properties);
+    write(pom1, "<project>1.0.1</project>");
+    write(pom2, "<project>2.0.1</project>");
+    scmHandler.commitFiles(Arrays.asList(pom1, pom2), ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 2 artifacts updated");
+    RevCommit versionUpdate = this.git.log().setMaxCount(1).call().iterator().next();
+    MavenModule mavenModule1 = new MavenModule(pom1, "at.nonblocking", "module1", "1.0.0");
+    mavenModule1.setNewVersion("1.0.1");
+    MavenModule mavenModule2 = new MavenModule(pom2, "at.nonblocking", "module2", "2.0.0");
+    mavenModule2.setNewVersion("2.0.1");
+    scmHandler.recordVersionUpdates(Arrays.asList(mavenModule1, mavenModule2));
+
+    commit("Fix in module2", "module2/src/B.java");
+
+    assertEquals(versionUpdate.name(), scmHandler.findVersionUpdateCommit("at.nonblocking", "module1", "1.0.1"));
+    assertNull(scmHandler.findVersionUpdateCommit("at.nonblocking", "module1", "1.0.0"));
+
+    Map<File, Boolean> changes = createScmHandler(properties).checkChangesSinceLastUpdate(Arrays.asList(module1, module2));
+    assertFalse(changes.get(module1));
+    assertTrue(changes.get(module2));
+
+    // Version update missing in the ledger: the POM differs from the recorded one, so the log is checked instead
+    write(pom2, "<project>2.0.2</project>");
+    createScmHandler().commitFiles(Arrays.asList(pom2), ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated");
+
+    changes = createScmHandler(properties).checkChangesSinceLastUpdate(Arrays.asList(module1, module2));
+    assertFalse(changes.get(module1));
+    assertFalse(changes.get(module2));
+  }
+
+  @Test
+  public void testVersionLedgerSharedBetweenClones() throws Exception {
+    commit("Initial import", "pom.xml", "module1/pom.xml", "module2/pom.xml");
+    Git otherClone = cloneViaRemote();
+    File otherWorkDir = otherClone.getRepository().getWorkTree();
+    Properties properties = new Properties();
+    properties.setProperty("gitVersionLedger", "true");
+    properties.setProperty("gitPushRetryDelay", "10");
+
+    File pom1 = new File(this.workDir, "module1/pom.xml");
+    ScmHandler scmHandler = newScmHandler();
+    scmHandler.init(this.workDir, null, null, properties);
+    write(pom1, "<project>1.0.1</project>");
+    scmHandler.commitFiles(Arrays.asList(pom1), ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated");
+    RevCommit versionUpdate1 = this.git.log().setMaxCount(1).call().iterator().next();
+    MavenModule mavenModule1 = new MavenModule(pom1, "at.nonblocking", "module1", "1.0.0");
+    mavenModule1.setNewVersion("1.0.1");
+    scmHandler.recordVersionUpdates(Arrays.asList(mavenModule1));
+
+    // The fresh clone fetches the published ledger and appends on top of it
+    otherClone.pull().call();
+    File pom2 = new File(otherWorkDir, "module2/pom.xml");
+    ScmHandler otherScmHandler = newScmHandler();
+    otherScmHandler.init(otherWorkDir, null, null, properties);
+    assertEquals(versionUpdate1.name(), otherScmHandler.findVersionUpdateCommit("at.nonblocking", "module1", "1.0.1"));
+    write(pom2, "<project>2.0.1</project>");
+    otherScmHandler.commitFiles(Arrays.asList(pom2), ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated");
+    RevCommit versionUpdate2 = otherClone.log().setMaxCount(1).call().iterator().next();
+    MavenModule mavenModule2 = new MavenModule(pom2, "at.nonblocking", "module2", "2.0.0");
+    mavenModule2.setNewVersion("2.0.1");
+    otherScmHandler.recordVersionUpdates(Arrays.asList(mavenModule2));
+    otherClone.close();
+
+    // The ledger of the first clone is behind the remote one, but is fetched before the lookup
+    ScmHandler refreshedScmHandler = newScmHandler();
+    refreshedScmHandler.init(this.workDir, null, null, properties);
+    assertEquals(versionUpdate1.name(), refreshedScmHandler.findVersionUpdateCommit("at.nonblocking", "module1", "1.0.1"));
+    assertEquals(versionUpdate2.name(), refreshedScmHandler.findVersionUpdateCommit("at.nonblocking", "module2", "2.0.1"));
+  }
+
+  /**
+   * Make a bare remote of the work dir repository and return a second clone of it.
+   */
+  private Git cloneViaRemote() throws Exception {
+    File remoteDir = new File(this.workDir.getParentFile(), this.workDir.getName() + "-remote.git");
+    Git.cloneRepository().setURI(this.workDir.toURI().toString()).setDirectory(remoteDir).setBare(true).call().close();
+
+    StoredConfig config = this.git.getRepository().getConfig();
+    config.setString("remote", "origin", "url", remoteDir.toURI().toString());
+    config.setString("remote", "origin", "fetch", "+refs/heads/*:refs/remotes/origin/*");
+    config.setString("branch", "master", "remote", "origin");
+    config.setString("branch", "master", "merge", "refs/heads/master");
+    config.save();
+    this.git.fetch().call();
+
+    File cloneDir = new File(this.workDir.getParentFile(), this.workDir.getName() + "-clone");
+    return Git.cloneRepository().setURI(remoteDir.toURI().toString()).setDirectory(cloneDir).call();
+  }
+
+  private ScmHandler createPushingScmHandler() {
+    Properties properties = new Properties();
+    properties.setProperty("gitDoPush", "true");
+    properties.setProperty("gitPushRetryDelay", "10");
+
+    ScmHandler scmHandler = newScmHandler();
+    scmHandler.init(this.workDir, null, null, properties);
+    return scmHandler;
+  }
+
+  private String read(RevCommit commit, String path) throws Exception {
+    try (TreeWalk treeWalk = TreeWalk.forPath(this.git.getRepository(), path, commit.getTree())) {
+      return new String(this.git.getRepository().open(treeWalk.getObjectId(0)).getBytes(), "UTF-8");
+    }
+  }
+
+  protected ScmHandler newScmHandler() {
+    return new ScmHandlerGitImpl();
+  }
+
+  private ScmHandler createScmHandler() {
+    return createScmHandler(new Properties());
+  }
+
+  private ScmHandler createScmHandler(File stateFile) {
+    Properties properties = new Properties();
+    properties.setProperty("gitChangeStateFile", stateFile.getAbsolutePath());
+    return createScmHandler(properties);
+  }
+
+  private ScmHandler createScmHandler(Properties properties) {
+    properties.setProperty("gitDoPush", "false");
+
+    ScmHandler scmHandler = newScmHandler();
+    scmHandler.init(this.workDir, null, null, properties);
+    return scmHandler;
+  }
+
+  private static void write(File file, String content) throws Exception {
+    file.getParentFile().mkdirs();
+    try (PrintWriter writer = new PrintWriter(file)) {
+      writer.write(content);
+    }
+  }
+
+  private RevCommit commit(String message, String... paths) throws Exception {
+    return commit(null, message, paths);
+  }
+
+  private RevCommit commit(PersonIdent author, String message, String... paths) throws Exception {
+    for (String path : paths) {
+      File file = new File(this.workDir, path);
+      file.getParentFile().mkdirs();
+      try (PrintWriter writer = new PrintWriter(file)) {
+        writer.write(path + " " + System.nanoTime());
+      }
+      this.git.add().addFilepattern(path).call();
+    }
+    CommitCommand commitCommand = this.git.commit().setMessage(message);
+    if (author != null) {
+      commitCommand.setAuthor(author);
+    }
+    return commitCommand.call();
+  }
+
+}
@@ -0,0 +1,98 @@
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.maven.model.InputSource;
+import org.apache.maven.model.io.xpp3.MavenXpp3ReaderEx;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.xml.XmlStreamReader;
+import org.junit.Test;
+
+import at.nonblocking.maven.nonsnapshot.ResourcesToolkit;
+
+public class PomScannerTest {
+
+  /**
+   * Timed comparison of the POM scanner with the full Maven reader, over the test POMs and over a large generated POM
+   * with long plugin configurations. The best of 5 rounds is reported after a warm up round. This is not a JMH
+   * benchmark: it shows the order of magnitude and guards against the scanner getting much slower than the Maven reader.
+   */
+  @Test
+  public void testScanTimeComparedToMavenReader() throws Exception {
+    String[] resources = {"test-pom.xml", "test-pom-parent.xml", "test-pom-noversion.xml", "test-pom-full.xml"};
+    File[] testPomFiles = new File[resources.length];
+    for (int i = 0; i < resources.length; i++) {
+      testPomFiles[i] = new File(ResourcesToolkit.GetPathToResourceInResourcesDir(getClass(), resources[i]));
+    }
+    File largePomFile = new File(ResourcesToolkit.GetPathToResourceInTarget("test-pom-large.xml"));
+    writeLargePom(largePomFile);
+
+    compareScanTime("test POMs", testPomFiles, 1000);
+    compareScanTime("large POM", new File[]{largePomFile}, 200);
+  }
+
+  private static void compareScanTime(String name, File[] pomFiles, int iterations) throws Exception {
+    long scanTime = Long.MAX_VALUE;
+    long readTime = Long.MAX_VALUE;
+    for (int round = 0; round < 6; round++) {
+      long roundScanTime = timeScan(pomFiles, iterations);
+      long roundReadTime = timeMavenReader(pomFiles, iterations);
+      if (round > 0) {
+        scanTime = Math.min(scanTime, roundScanTime);
+        readTime = Math.min(readTime, roundReadTime);
+      }
+    }
+
+    int reads = iterations * pomFiles.length;
+    System.out.println(name + ": POM scanner " + scanTime / reads / 1000 + " us/POM, Maven reader " + readTime / reads / 1000 + " us/POM");
+    assertTrue(name + ": POM scanner " + scanTime + " ns, Maven reader " + readTime + " ns", scanTime < 2 * readTime);
+  }
+
+  private static long timeScan(File[] pomFiles, int iterations) throws Exception {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      for (File pomFile : pomFiles) {
+        assertNotNull(PomScanner.scan(pomFile));
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static long timeMavenReader(File[] pomFiles, int iterations) throws Exception {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      for (File pomFile : pomFiles) {
+        try (XmlStreamReader xmlStreamReader = ReaderFactory.newXmlReader(pomFile)) {
+          assertNotNull(new MavenXpp3ReaderEx().read(xmlStreamReader, false, new InputSource()));
+        }
+      }
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static void writeLargePom(File pomFile) throws Exception {
+    StringBuilder pom = new StringBuilder("<?xml version=\"1.0\"?>\n<project>\n  <modelVersion>4.0.0</modelVersion>\n"
+        + "  <groupId>at.nonblocking</groupId>\n  <artifactId>large</artifactId>\n  <version>1.0.0</version>\n  <dependencies>\n");
+    for (int i = 0; i < 100; i++) {
+      pom.append("    <dependency><groupId>at.nonblocking</groupId><artifactId>dependency").append(i)
+          .append("</artifactId><version>1.").append(i).append(".0</version></dependency>\n");
+    }
+    pom.append("  </dependencies>\n  <build>\n    <plugins>\n");
+    for (int i = 0; i < 50; i++) {
+      pom.append("      <plugin><groupId>at.nonblocking</groupId><artifactId>plugin").append(i).append("</artifactId><version>1.0.0</version>\n")
+          .append("        <configuration>");
+      for (int j = 0; j < 30; j++) {
+        pom.append("<item").append(j).append(">value ").append(j).append("</item").append(j).append('>');
+      }
+      pom.append("</configuration>\n        <executions><execution><id>default</id><goals><goal>run</goal></goals></execution></executions>\n")
+          .append("      </plugin>\n");
+    }
+    pom.append("    </plugins>\n  </build>\n</project>\n");
+    Files.write(pomFile.toPath(), pom.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+}
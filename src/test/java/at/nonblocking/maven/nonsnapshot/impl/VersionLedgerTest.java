@@ -0,0 +1,47 @@
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import static junit.framework.Assert.*;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class VersionLedgerTest {
+
+  private static final ObjectId COMMIT_1 = ObjectId.fromString("1111111111111111111111111111111111111111");
+  private static final ObjectId COMMIT_2 = ObjectId.fromString("2222222222222222222222222222222222222222");
+
+  private Git git;
+
+  @Before
+  public void setupRepository() throws Exception {
+    File workDir = new File("target/git-repositories/" + System.nanoTime()).getAbsoluteFile();
+    this.git = Git.init().setDirectory(workDir).call();
+  }
+
+  @After
+  public void closeRepository() {
+    this.git.close();
+  }
+
+  @Test
+  public void testLastEntryAfterArtifactIdRenamed() throws Exception {
+    Repository repository = this.git.getRepository();
+    VersionLedger.append(repository, Collections.singletonList(new VersionLedger.Entry("at.nonblocking", "zzz", "1.0.1", COMMIT_1, "module1/pom.xml")));
+    VersionLedger.append(repository, Collections.singletonList(new VersionLedger.Entry("at.nonblocking", "aaa", "1.0.2", COMMIT_2, "module1/pom.xml")));
+
+    VersionLedger ledger = VersionLedger.read(repository);
+    VersionLedger.Entry lastEntry = ledger.getLastEntry("module1/pom.xml");
+    assertEquals("1.0.2", lastEntry.getVersion());
+    assertEquals(COMMIT_2, lastEntry.getCommitId());
+    assertEquals(2, lastEntry.getSequence());
+    assertEquals(COMMIT_1, ledger.findEntry("at.nonblocking", "zzz", "1.0.1").getCommitId());
+  }
+
+}
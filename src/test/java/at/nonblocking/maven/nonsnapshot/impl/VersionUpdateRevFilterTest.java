@@ -0,0 +1,32 @@
+package at.nonblocking.maven.nonsnapshot.impl;
+
+import static junit.framework.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import at.nonblocking.maven.nonsnapshot.ScmHandler;
+
+public class VersionUpdateRevFilterTest {
+
+  private static final String HEADERS = "tree 4b825dc642cb6eb9a060e54bf8d69288fbee4904\n"
+      + "author Test <test@nonblocking.at> 1500000000 +0000\n"
+      + "committer Test <test@nonblocking.at> 1500000000 +0000\n\n";
+
+  @Test
+  public void testIsVersionUpdate() {
+    assertVersionUpdate(true, ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + " Version of 1 artifacts updated\n");
+    assertVersionUpdate(true, "Squashed: Version of 1 artifacts updated\n\nChanges:\nmodule1\n\n" + ScmHandler.NONSNAPSHOT_COMMIT_TRAILER + "\n");
+    assertVersionUpdate(true, "Squashed\n\nReviewed-by: Test\n" + ScmHandler.NONSNAPSHOT_COMMIT_TRAILER + "\n\n");
+    assertVersionUpdate(false, "Fix\n");
+    assertVersionUpdate(false, "Fix\n\n" + ScmHandler.NONSNAPSHOT_COMMIT_TRAILER + "\n\nNot the last paragraph\n");
+    assertVersionUpdate(false, "Fix " + ScmHandler.NONSNAPSHOT_COMMIT_MESSAGE_PREFIX + "\n");
+  }
+
+  private static void assertVersionUpdate(boolean expected, String message) {
+    assertEquals(message, expected, VersionUpdateRevFilter.isVersionUpdate(message));
+    assertEquals(message, expected, VersionUpdateRevFilter.isVersionUpdate((HEADERS + message).getBytes(StandardCharsets.UTF_8)));
+  }
+
+}
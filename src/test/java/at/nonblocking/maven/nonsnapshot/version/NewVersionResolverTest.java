@@ -36,4 +36,16 @@ public class NewVersionResolverTest {
         resolver = new NewVersionResolver(true, true, DEFAULT_INCREMENT_VERSION_PATTERN, null);
         assertThat(resolver.resolveNewVersion("1.2.3-pks-10", "master"), equalTo("1.2.3-master-SNAPSHOT"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void allocateBuildNumber() {
+        NewVersionResolver resolver = new NewVersionResolver(true, false, DEFAULT_INCREMENT_VERSION_PATTERN, null,
+                (groupId, artifactId, minimum) -> minimum + 5);
+        assertThat(resolver.resolveNewVersion("at.nonblocking", "test", "1.2.3-master-10", "master"), equalTo("1.2.3-master-16"));
+        assertThat(resolver.resolveNewVersion("1.2.3-master-10", "master"), equalTo("1.2.3-master-11"));
+
+        resolver = new NewVersionResolver(true, true, DEFAULT_INCREMENT_VERSION_PATTERN, null,
+                (groupId, artifactId, minimum) -> minimum + 5);
+        assertThat(resolver.resolveNewVersion("at.nonblocking", "test", "1.2.3-master-10", "master"), equalTo("1.2.3-master-SNAPSHOT"));
+    }
+}